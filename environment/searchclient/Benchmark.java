@@ -0,0 +1,48 @@
+package searchclient;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+// Runs one or more strategies on one or more level files without the server and reports time
+// and throughput, so strategies can be compared on the same levels. Arguments ending in .lvl
+// are levels, every other argument is a set of SearchClient options, e.g.
+//   java searchclient.Benchmark levels/SAD2.lvl levels/Crunch.lvl "-bestfirst -astar" "-multiqueue -astar -threads 8"
+// Every strategy is run on every level in turn, all in the same JVM.
+public class Benchmark {
+    public static void main(String[] args) throws Exception {
+        ArrayList<String> levels = new ArrayList<String>();
+        ArrayList<String> strategies = new ArrayList<String>();
+        for (String arg : args) {
+            (arg.endsWith(".lvl") ? levels : strategies).add(arg);
+        }
+        if (levels.isEmpty() || strategies.isEmpty()) {
+            System.err.println("Usage: java searchclient.Benchmark <level file>... \"<strategy options>\"...");
+            System.exit(1);
+        }
+
+        for (String file : levels) {
+            // The parser expects the level to be terminated by an empty line, as sent by the server.
+            String level = new String(Files.readAllBytes(Paths.get(file))).replaceAll("\\s+$", "") + "\n\n";
+            for (String options : strategies) {
+                SearchClient client = new SearchClient(new BufferedReader(new StringReader(level)));
+                Strategy strategy = SearchClient.chooseStrategy(options.trim().split("\\s+"), client.initialState);
+                long start = System.nanoTime();
+                LinkedList<Node> solution;
+                try {
+                    solution = client.Search(strategy);
+                } catch (OutOfMemoryError ex) {
+                    System.err.println("Maximum memory usage exceeded.");
+                    solution = null;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.format("%s, %s: %s, %d explored in %.2f s (%.0f nodes/s)\n", file, strategy.toString(),
+                        solution == null ? "no solution" : "solution of length " + solution.size(), strategy.countExplored(), seconds,
+                        strategy.countExplored() / seconds);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package searchclient;
+
+// Bitstate hashing: a Bloom filter over 64-bit state keys, as used by SPIN for searching
+// state spaces too large for an exact visited set. Each key sets HASHES bits derived from it
+// by double hashing. A new state whose bits all happen to be set already is wrongly taken
+// for a visited one and omitted from the search; the chance of that grows with the fill.
+public class BloomFilter {
+    private static final int HASHES = 3;
+
+    private final long[] bits;
+    private final long numBits;
+    private long setBits;
+    private long inserted;
+    // Sum over insertions of the omission probability at the time, i.e. the expected
+    // number of new states that were wrongly pruned.
+    private double expectedOmissions;
+
+    public BloomFilter(long bytes) {
+        long words = Math.max(1, bytes / 8);
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Bitstate filter too large: " + bytes + " bytes");
+        }
+        this.bits = new long[(int) words];
+        this.numBits = words * 64;
+    }
+
+    public boolean mightContain(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, this.numBits);
+            if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void add(long key) {
+        this.expectedOmissions += this.omissionProbability();
+        this.inserted++;
+        long h1 = mix(key);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, this.numBits);
+            long word = this.bits[(int) (bit >>> 6)];
+            if ((word & (1L << bit)) == 0) {
+                this.bits[(int) (bit >>> 6)] = word | (1L << bit);
+                this.setBits++;
+            }
+        }
+    }
+
+    // Probability that a state not seen before is reported as visited.
+    public double omissionProbability() {
+        return Math.pow((double) this.setBits / this.numBits, HASHES);
+    }
+
+    public String status() {
+        return String.format("Bitstate: %.1f MB, %d states, fill %.4f, omission probability %.2e (expected omissions %.1f)",
+                this.numBits / 8.0 / (1 << 20), this.inserted, (double) this.setBits / this.numBits, this.omissionProbability(),
+                this.expectedOmissions);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,141 @@
+package searchclient;
+
+import java.util.Arrays;
+
+// An immutable box configuration: box cells sorted in ascending order with the letter of each
+// box alongside, plus the boxes' share of the Zobrist key and the number of goals they cover.
+// Nodes only point to a layer, so a Move child shares its parent's, and a Push or Pull derives
+// a new layer in which one box has moved.
+//
+// Layers are interned in a fixed-size direct-mapped table, so the same configuration reached
+// along different paths is usually one instance. An entry is simply overwritten on collision;
+// that only loses sharing, never correctness, and keeps the table from holding on to every
+// configuration of a long search. Fields are final, so layers can be shared across threads.
+public final class BoxLayer {
+    private static final int INTERN_BITS = 18;
+    private static BoxLayer[] interned = new BoxLayer[1 << INTERN_BITS];
+
+    public static final BoxLayer EMPTY = new BoxLayer(new int[0], new char[0], 0, 0);
+
+    public final int[] cells;
+    public final char[] letters;
+    final long hash;
+    final int goalsSatisfied;
+
+    private BoxLayer(int[] cells, char[] letters, long hash, int goalsSatisfied) {
+        this.cells = cells;
+        this.letters = letters;
+        this.hash = hash;
+        this.goalsSatisfied = goalsSatisfied;
+    }
+
+    // A layer for the given boxes; cells must be sorted. The arrays are not copied.
+    public static BoxLayer of(int[] cells, char[] letters) {
+        long hash = 0;
+        int goalsSatisfied = 0;
+        for (int i = 0; i < cells.length; i++) {
+            hash ^= Node.boxKey(letters[i], cells[i]);
+            if (Node.goalMatches(cells[i], letters[i])) {
+                goalsSatisfied++;
+            }
+        }
+        return intern(new BoxLayer(cells, letters, hash, goalsSatisfied));
+    }
+
+    // Drops all interned layers; called when a new level is loaded.
+    static void clearInterned() {
+        interned = new BoxLayer[1 << INTERN_BITS];
+    }
+
+    private static BoxLayer intern(BoxLayer layer) {
+        BoxLayer[] table = interned;
+        int slot = (int) ((layer.hash * 0x9E3779B97F4A7C15L) >>> (64 - INTERN_BITS));
+        BoxLayer existing = table[slot];
+        if (existing != null && existing.equals(layer)) {
+            return existing;
+        }
+        table[slot] = layer;
+        return layer;
+    }
+
+    public int size() {
+        return this.cells.length;
+    }
+
+    // Returns the position of the box at the given cell, or a negative number if there is none.
+    public int indexOf(int cell) {
+        return Arrays.binarySearch(this.cells, cell);
+    }
+
+    // The letter of the box at the given cell, or 0 if there is none.
+    public char letterAt(int cell) {
+        int i = this.indexOf(cell);
+        return i < 0 ? 0 : this.letters[i];
+    }
+
+    // This layer with an extra box on the free cell 'cell'; used while parsing the level.
+    public BoxLayer withBox(int cell, char letter) {
+        int pos = -this.indexOf(cell) - 1;
+        int len = this.cells.length;
+        int[] cells = new int[len + 1];
+        char[] letters = new char[len + 1];
+        System.arraycopy(this.cells, 0, cells, 0, pos);
+        System.arraycopy(this.letters, 0, letters, 0, pos);
+        cells[pos] = cell;
+        letters[pos] = letter;
+        System.arraycopy(this.cells, pos, cells, pos + 1, len - pos);
+        System.arraycopy(this.letters, pos, letters, pos + 1, len - pos);
+        return of(cells, letters);
+    }
+
+    // This layer with the box at cell 'from' moved to the free cell 'to'.
+    public BoxLayer moved(int from, int to) {
+        int[] cells = this.cells.clone();
+        char[] letters = this.letters.clone();
+        int i = this.indexOf(from);
+        char letter = letters[i];
+        // Shift the boxes in between so the cells stay sorted
+        if (to > from) {
+            while (i + 1 < cells.length && cells[i + 1] < to) {
+                cells[i] = cells[i + 1];
+                letters[i] = letters[i + 1];
+                i++;
+            }
+        } else {
+            while (i > 0 && cells[i - 1] > to) {
+                cells[i] = cells[i - 1];
+                letters[i] = letters[i - 1];
+                i--;
+            }
+        }
+        cells[i] = to;
+        letters[i] = letter;
+
+        int goalsSatisfied = this.goalsSatisfied;
+        if (Node.goalMatches(from, letter)) {
+            goalsSatisfied--;
+        }
+        if (Node.goalMatches(to, letter)) {
+            goalsSatisfied++;
+        }
+        long hash = this.hash ^ Node.boxKey(letter, from) ^ Node.boxKey(letter, to);
+        return intern(new BoxLayer(cells, letters, hash, goalsSatisfied));
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (this.hash ^ (this.hash >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof BoxLayer)) {
+            return false;
+        }
+        BoxLayer other = (BoxLayer) obj;
+        return this.hash == other.hash && Arrays.equals(this.cells, other.cells) && Arrays.equals(this.letters, other.letters);
+    }
+}
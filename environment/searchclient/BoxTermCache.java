@@ -0,0 +1,92 @@
+package searchclient;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Bounded cache from the Zobrist key of a box configuration to the part of h that depends only
+// on the boxes, so states that differ only in the agent's position share one computation. It
+// serves the states whose parent has no heuristic arrays to update, which in practice means
+// IDA*, as it changes one state in place; the other engines update the parent's arrays instead.
+// Slots are grouped in buckets of WAYS, and a full bucket is replaced CLOCK-style: a hit sets
+// the slot's reference bit, and an insertion sweeps from the bucket's hand, clearing set bits,
+// until it finds a slot whose bit was clear.
+//
+// The cache is shared by all threads evaluating with one heuristic and takes no locks. A slot
+// stores key ^ data next to data, so a slot torn by two concurrent writers no longer matches
+// its key and reads as a miss. Reference bits and hands are only hints and may race freely.
+public class BoxTermCache {
+    private static final int WAYS = 4;
+    // Set in the data of every filled slot, so an empty slot never matches.
+    private static final long VALID = 1L << 32;
+
+    private final long[] checks;
+    private final long[] data;
+    private final byte[] referenced;
+    private final byte[] hands;
+    private final int bucketMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public BoxTermCache(int bits) {
+        this.checks = new long[1 << bits];
+        this.data = new long[1 << bits];
+        this.referenced = new byte[1 << bits];
+        this.hands = new byte[(1 << bits) / WAYS];
+        this.bucketMask = this.hands.length - 1;
+    }
+
+    // The term stored for key, or -1 if it is not cached.
+    public int get(long key) {
+        int base = this.bucket(key) * WAYS;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            long d = this.data[slot];
+            if ((d & VALID) != 0 && (this.checks[slot] ^ d) == key) {
+                this.referenced[slot] = 1;
+                this.hits.increment();
+                return (int) d;
+            }
+        }
+        this.misses.increment();
+        return -1;
+    }
+
+    // Stores a non-negative term for key, evicting the entry the clock hand settles on if the
+    // bucket is full.
+    public void put(long key, int term) {
+        int bucket = this.bucket(key);
+        int base = bucket * WAYS;
+        int victim = -1;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if ((this.data[slot] & VALID) == 0) {
+                victim = slot;
+                break;
+            }
+        }
+        if (victim < 0) {
+            int hand = this.hands[bucket];
+            while (this.referenced[base + hand] != 0) {
+                this.referenced[base + hand] = 0;
+                hand = (hand + 1) % WAYS;
+            }
+            victim = base + hand;
+            this.hands[bucket] = (byte) ((hand + 1) % WAYS);
+            this.evictions.increment();
+        }
+        long d = VALID | term;
+        this.data[victim] = d;
+        this.checks[victim] = key ^ d;
+        this.referenced[victim] = 0;
+    }
+
+    private int bucket(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & this.bucketMask;
+    }
+
+    public String status() {
+        long hits = this.hits.sum();
+        long lookups = hits + this.misses.sum();
+        return String.format("Box term cache: %.1f%% hits of %d lookups, %d evictions", lookups == 0 ? 0 : 100.0 * hits / lookups,
+                lookups, this.evictions.sum());
+    }
+}
@@ -0,0 +1,209 @@
+package searchclient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.TreeMap;
+
+// Two-level bucket queue for small non-negative integer priorities.
+// Nodes are bucketed first on their primary key (f) and then on a secondary
+// tie-breaking key; push and pop are amortised O(1) as long as the keys stay small.
+// Within a single (primary, tie) bucket nodes are popped LIFO.
+//
+// When the heap runs low, spill moves the rows with the highest primary keys to StateFiles,
+// one per key, as compact records (g, tie key, arena parent id, action index, state). A row is
+// read back as a whole once its key is the lowest left, so nodes still come out in key order.
+public class BucketQueue {
+    // Record layout of a spilled node; the state written by Node.writeState follows.
+    private static final int G = 0, TIE = 4, PARENT = 8, ACTION = 12, STATE = 13;
+
+    private final boolean highTieFirst;
+
+    // rows[f][tie] is the stack of nodes with that primary and tie key.
+    private Node[][][] rows = new Node[64][][];
+    private int[][] rowSizes = new int[64][];
+    private int[] rowCounts = new int[64];
+    private int[] rowTieCursor = new int[64];
+    private int minKey = Integer.MAX_VALUE;
+    // Nodes in memory; spilledCount more are on disk.
+    private int size;
+
+    // Spilled rows by primary key; null until the first spill.
+    private TreeMap<Integer, StateFile> spilled;
+    private long spilledCount;
+    private Path spillDirectory;
+    private int boxCount;
+    private int filesCreated;
+
+    // If highTieFirst is set, larger tie keys are popped first within a primary key.
+    public BucketQueue(boolean highTieFirst) {
+        this.highTieFirst = highTieFirst;
+    }
+
+    public void push(Node n, int key, int tie) {
+        if (key < 0 || tie < 0) {
+            throw new IllegalArgumentException("Bucket queue keys must be non-negative: " + key + ", " + tie);
+        }
+        if (key >= this.rows.length) {
+            int len = Math.max(key + 1, this.rows.length * 2);
+            this.rows = Arrays.copyOf(this.rows, len);
+            this.rowSizes = Arrays.copyOf(this.rowSizes, len);
+            this.rowCounts = Arrays.copyOf(this.rowCounts, len);
+            this.rowTieCursor = Arrays.copyOf(this.rowTieCursor, len);
+        }
+        Node[][] row = this.rows[key];
+        if (row == null || tie >= row.length) {
+            int len = Math.max(tie + 1, row == null ? 16 : row.length * 2);
+            this.rows[key] = row = row == null ? new Node[len][] : Arrays.copyOf(row, len);
+            this.rowSizes[key] = this.rowSizes[key] == null ? new int[len] : Arrays.copyOf(this.rowSizes[key], len);
+        }
+        Node[] bucket = row[tie];
+        int bucketSize = this.rowSizes[key][tie];
+        if (bucket == null) {
+            row[tie] = bucket = new Node[8];
+        } else if (bucketSize == bucket.length) {
+            row[tie] = bucket = Arrays.copyOf(bucket, bucketSize * 2);
+        }
+        bucket[bucketSize] = n;
+        this.rowSizes[key][tie] = bucketSize + 1;
+
+        if (this.rowCounts[key]++ == 0 || (this.highTieFirst ? tie > this.rowTieCursor[key] : tie < this.rowTieCursor[key])) {
+            this.rowTieCursor[key] = tie;
+        }
+        if (key < this.minKey) {
+            this.minKey = key;
+        }
+        this.size++;
+    }
+
+    public Node pop() {
+        if (this.spilled != null && !this.spilled.isEmpty()) {
+            int first = this.spilled.firstKey();
+            if (this.size == 0 || first <= this.lowestKeyInMemory()) {
+                this.reload(first);
+            }
+        }
+        if (this.size == 0) {
+            return null;
+        }
+        int key = this.lowestKeyInMemory();
+        int[] sizes = this.rowSizes[key];
+        int tie = this.rowTieCursor[key];
+        while (sizes[tie] == 0) {
+            tie += this.highTieFirst ? -1 : 1;
+        }
+        this.rowTieCursor[key] = tie;
+
+        Node[] bucket = this.rows[key][tie];
+        Node n = bucket[--sizes[tie]];
+        bucket[sizes[tie]] = null;
+        this.rowCounts[key]--;
+        if (--this.size == 0) {
+            this.minKey = Integer.MAX_VALUE;
+        }
+        return n;
+    }
+
+    private int lowestKeyInMemory() {
+        while (this.rowCounts[this.minKey] == 0) {
+            this.minKey++;
+        }
+        return this.minKey;
+    }
+
+    // Moves whole rows to disk, highest keys first, until at most half of the nodes in memory
+    // are left; the row with the lowest key always stays. Only the state, g, action and
+    // parentId of a node are written, so every queued node must have been detached into a
+    // NodeArena, and any cached heuristic arrays are recomputed after reading it back.
+    public void spill() {
+        if (this.size == 0) {
+            return;
+        }
+        int lowest = this.lowestKeyInMemory();
+        int keep = this.size / 2;
+        for (int key = this.rows.length - 1; key > lowest && this.size > keep; key--) {
+            if (this.rowCounts[key] > 0) {
+                this.spillRow(key);
+            }
+        }
+    }
+
+    private void spillRow(int key) {
+        Node[][] row = this.rows[key];
+        int[] sizes = this.rowSizes[key];
+        StateFile file = null;
+        for (int tie = 0; tie < row.length; tie++) {
+            for (int i = 0; i < sizes[tie]; i++) {
+                Node n = row[tie][i];
+                if (file == null) {
+                    file = this.spillFile(key, n.boxes.size());
+                }
+                ByteBuffer buf = file.append();
+                buf.putInt(n.g());
+                buf.putInt(tie);
+                buf.putInt(n.parentId);
+                buf.put(n.action == null ? -1 : (byte) n.action.index);
+                n.writeState(buf);
+            }
+        }
+        this.rows[key] = null;
+        this.rowSizes[key] = null;
+        this.size -= this.rowCounts[key];
+        this.spilledCount += this.rowCounts[key];
+        this.rowCounts[key] = 0;
+    }
+
+    // The file of the row with the given key, created if the row has not been spilled before.
+    private StateFile spillFile(int key, int boxCount) {
+        if (this.spilled == null) {
+            try {
+                this.spillDirectory = Files.createTempDirectory("searchclient");
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            this.spillDirectory.toFile().deleteOnExit();
+            this.spilled = new TreeMap<Integer, StateFile>();
+            this.boxCount = boxCount;
+        }
+        StateFile file = this.spilled.get(key);
+        if (file == null) {
+            Path path = this.spillDirectory.resolve("open" + this.filesCreated++ + ".bin");
+            file = new StateFile(path, STATE + Node.stateBytes(this.boxCount));
+            this.spilled.put(key, file);
+        }
+        return file;
+    }
+
+    // Reads a spilled row back into memory and deletes its file.
+    private void reload(int key) {
+        StateFile file = this.spilled.remove(key);
+        StateFile.Reader reader = file.reader();
+        for (long i = 0; i < file.count(); i++) {
+            ByteBuffer buf = reader.at(i);
+            int start = buf.position();
+            int action = buf.get(start + ACTION);
+            buf.position(start + STATE);
+            Node n = Node.readState(buf, this.boxCount, buf.getInt(start + G));
+            n.parentId = buf.getInt(start + PARENT);
+            n.action = action < 0 ? null : Command.EVERY[action];
+            this.push(n, key, buf.getInt(start + TIE));
+        }
+        this.spilledCount -= file.count();
+        file.delete();
+    }
+
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, this.size + this.spilledCount);
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0 && this.spilledCount == 0;
+    }
+
+    public long spilledCount() {
+        return this.spilledCount;
+    }
+}
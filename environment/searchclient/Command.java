@@ -12,6 +12,9 @@ public class Command {
 		Move, Push, Pull
 	};
 	
+	// Commands are only created below, so the creation order is their index in EVERY.
+	private static int created;
+
 	public static final Command[] EVERY;
 	static {
 		LinkedList<Command> cmds = new LinkedList<Command>();
@@ -67,17 +70,34 @@ public class Command {
 	public final Type actionType;
 	public final Dir dir1;
 	public final Dir dir2;
+	// Position of this command in EVERY.
+	public final int index;
 
-	public Command(Dir d) {
+	private Command(Dir d) {
 		this.actionType = Type.Move;
 		this.dir1 = d;
 		this.dir2 = null;
+		this.index = created++;
 	}
 
-	public Command(Type t, Dir d1, Dir d2) {
+	private Command(Type t, Dir d1, Dir d2) {
 		this.actionType = t;
 		this.dir1 = d1;
 		this.dir2 = d2;
+		this.index = created++;
+	}
+
+	// The command that undoes this one: Move back in the opposite direction, and a Push is
+	// undone by a Pull in the opposite direction of the agent, and vice versa.
+	public Command inverse() {
+		Type type = this.actionType == Type.Push ? Type.Pull : this.actionType == Type.Pull ? Type.Push : Type.Move;
+		Dir back = Dir.values()[3 - this.dir1.ordinal()];
+		for (Command c : EVERY) {
+			if (c.actionType == type && c.dir1 == back && c.dir2 == this.dir2) {
+				return c;
+			}
+		}
+		throw new IllegalStateException("No inverse of " + this);
 	}
 
 	@Override
@@ -0,0 +1,131 @@
+package searchclient;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free counterpart of VisitedTable for searches that share one table between threads.
+// Keys are 64-bit state fingerprints claimed with a CAS on an open-addressing array; each key
+// has one long value whose meaning is up to the search. A lock-free table cannot be rehashed
+// while other threads use it, so once it is full, inserts return FULL and it is up to the search
+// to stop its threads and copy the entries to a larger table with copyTo.
+//
+// Summing the size counter touches every thread's cell, so inserts only compare it against the
+// limit about once every checkMask + 1 times, picked by the key bits; the load can overshoot
+// by that many inserts per thread, which the margin to a completely full table absorbs.
+public class ConcurrentVisitedTable {
+    public static final int FULL = Integer.MIN_VALUE;
+    private static final long EMPTY = 0;
+    private static final float MAX_LOAD = 0.9f;
+
+    private final AtomicLongArray keys;
+    private final AtomicLongArray values;
+    private final int mask;
+    private final long limit;
+    private final int checkMask;
+    private final LongAdder size = new LongAdder();
+    private volatile boolean full;
+
+    public ConcurrentVisitedTable(int capacity) {
+        int pow2 = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.keys = new AtomicLongArray(pow2);
+        this.values = new AtomicLongArray(pow2);
+        this.mask = pow2 - 1;
+        this.limit = (long) (pow2 * MAX_LOAD);
+        this.checkMask = Math.min(1 << 10, Integer.highestOneBit(Math.max(pow2 >> 8, 1))) - 1;
+    }
+
+    // Spends about an eighth of the maximum heap on the table.
+    public static int defaultCapacity() {
+        long entries = Runtime.getRuntime().maxMemory() / 8 / 16;
+        return (int) Math.min(1 << 30, Long.highestOneBit(Math.max(entries, 1 << 16)));
+    }
+
+    // Returns the slot of the newly inserted key, ~slot of the existing entry if the key was
+    // already present, or FULL if the key is new but the table is full; the key is then not
+    // inserted. A concurrent reader may see a new key before its value is written.
+    public int putIfAbsent(long key, long value) {
+        key = key == EMPTY ? 1 : key;
+        int slot = mix(key) & this.mask;
+        for (int probes = 0; probes <= this.mask; probes++) {
+            long k = this.keys.get(slot);
+            if (k == key) {
+                return ~slot;
+            }
+            if (k == EMPTY) {
+                if (this.full || ((key & this.checkMask) == 0 && this.size.sum() >= this.limit)) {
+                    this.full = true;
+                    return FULL;
+                }
+                if (this.keys.compareAndSet(slot, EMPTY, key)) {
+                    this.values.set(slot, value);
+                    this.size.increment();
+                    return slot;
+                }
+                if (this.keys.get(slot) == key) {
+                    return ~slot;
+                }
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return FULL;
+    }
+
+    // Returns the slot of the key, or -1 if it is not present.
+    public int find(long key) {
+        key = key == EMPTY ? 1 : key;
+        int slot = mix(key) & this.mask;
+        for (int probes = 0; probes <= this.mask; probes++) {
+            long k = this.keys.get(slot);
+            if (k == key) {
+                return slot;
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    public long value(int slot) {
+        return this.values.get(slot);
+    }
+
+    public boolean compareAndSetValue(int slot, long expected, long value) {
+        return this.values.compareAndSet(slot, expected, value);
+    }
+
+    public void setValue(int slot, long value) {
+        this.values.set(slot, value);
+    }
+
+    // Inserts every entry into 'into' and returns the slot each old slot moved to, -1 where it
+    // was empty. No other thread may use either table meanwhile.
+    public int[] copyTo(ConcurrentVisitedTable into) {
+        int[] moved = new int[this.mask + 1];
+        for (int slot = 0; slot <= this.mask; slot++) {
+            long key = this.keys.get(slot);
+            moved[slot] = key == EMPTY ? -1 : into.putIfAbsent(key, this.values.get(slot));
+        }
+        return moved;
+    }
+
+    public int capacity() {
+        return this.mask + 1;
+    }
+
+    public long size() {
+        return this.size.sum();
+    }
+
+    public double loadFactor() {
+        return (double) this.size.sum() / (this.mask + 1);
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
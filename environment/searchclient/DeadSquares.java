@@ -0,0 +1,89 @@
+package searchclient;
+
+import java.util.ArrayDeque;
+
+// Static dead-square detection, computed once when the level is loaded.
+// A cell is dead for a box letter if a box of that letter on the cell can never
+// reach a goal of the letter, given that the agent may either push or pull it.
+// Only letters where every box is needed on a goal are pruned; a spare box may
+// legitimately be parked anywhere.
+public class DeadSquares {
+    // live[letter - 'A'][cell] is true if a box of the letter can still reach a goal from cell.
+    // A null row means boxes of that letter are never pruned.
+    private static boolean[][] live = new boolean[26][];
+
+    public static void init(Node initialState) {
+        live = new boolean[26][];
+        int[] boxCount = new int[26];
+        int[] goalCount = new int[26];
+        for (char letter : initialState.boxes.letters) {
+            boxCount[letter - 'A']++;
+        }
+        for (char goal : Node.level.goalLetters()) {
+            goalCount[goal - 'a'] = Node.level.goalCells(goal).length;
+        }
+
+        for (int letter = 0; letter < 26; letter++) {
+            if (boxCount[letter] > 0 && goalCount[letter] > 0 && boxCount[letter] <= goalCount[letter]) {
+                live[letter] = liveCells((char) ('a' + letter));
+            }
+        }
+    }
+
+    // Backwards search from the goals: a box can move from c to the free neighbour d if the
+    // agent has room next to c (push) or next to d (pull). Pushes and pulls may turn, so any
+    // free neighbour will do except the other cell of the move.
+    private static boolean[] liveCells(char goal) {
+        boolean[] result = new boolean[Node.MAX_ROW * Node.MAX_COL];
+        ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+        for (int cell : Node.level.goalCells(goal)) {
+            result[cell] = true;
+            queue.add(cell);
+        }
+
+        while (!queue.isEmpty()) {
+            int d = queue.poll();
+            int dRow = d / Node.MAX_COL;
+            int dCol = d % Node.MAX_COL;
+            for (Command.Dir dir : Command.Dir.values()) {
+                int dr = Command.dirToRowChange(dir);
+                int dc = Command.dirToColChange(dir);
+                int cRow = dRow - dr;
+                int cCol = dCol - dc;
+                if (!isFree(cRow, cCol) || result[Node.cell(cRow, cCol)]) {
+                    continue;
+                }
+                if (hasFreeNeighbour(cRow, cCol, d) || hasFreeNeighbour(dRow, dCol, Node.cell(cRow, cCol))) {
+                    result[Node.cell(cRow, cCol)] = true;
+                    queue.add(Node.cell(cRow, cCol));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isFree(int row, int col) {
+        return !Node.level.isWall(row, col);
+    }
+
+    // True if (row, col) has a free neighbour other than the cell 'except'.
+    static boolean hasFreeNeighbour(int row, int col, int except) {
+        for (Command.Dir dir : Command.Dir.values()) {
+            int r = row + Command.dirToRowChange(dir);
+            int c = col + Command.dirToColChange(dir);
+            if (isFree(r, c) && Node.cell(r, c) != except) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static boolean isDead(char boxLetter, int row, int col) {
+        return isDead(boxLetter, Node.cell(row, col));
+    }
+
+    public static boolean isDead(char boxLetter, int cell) {
+        boolean[] cells = live[boxLetter - 'A'];
+        return cells != null && !cells[cell];
+    }
+}
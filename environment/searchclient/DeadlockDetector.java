@@ -0,0 +1,201 @@
+package searchclient;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Dynamic deadlock detection, run on every generated node before it enters the frontier.
+//
+// A box can move one step in a direction if the target cell is free and the agent has room
+// next to the box (push) or next to the target (pull). Pushes and pulls may turn, so any free
+// neighbour will do except the other cell of the move. A box is frozen if it can move in
+// no direction even when every box around it that is not itself frozen is assumed to get out
+// of the way. While checking its neighbours the box itself is treated as a wall, which is what
+// makes mutually blocking boxes frozen. A frozen box is a deadlock if it sits on a goal of
+// another letter, or off its goal when every box of its letter is needed.
+//
+// Proven deadlocks whose proof only looked at cells close to the moved box are remembered as
+// patterns: the Zobrist key of the boxes in a small window around it. A later node with the same
+// window contents is rejected with a single set lookup.
+public class DeadlockDetector {
+    // Pattern windows span (2 * WINDOW + 1)^2 cells around the moved box.
+    private static final int WINDOW = 2;
+
+    private final boolean[] needsAllBoxes;
+    private final Set<Long> patterns;
+
+    private final LongAdder pruned;
+    private final LongAdder patternHits;
+    private final LongAdder nanos;
+
+    // Scratch state for a single check, private to each detector.
+    private int[] assumed = new int[16];
+    private int assumedCount;
+    private int[] frozen = new int[16];
+    private int frozenCount;
+    private int minRow, maxRow, minCol, maxCol;
+
+    public DeadlockDetector(Node initialState) {
+        this.needsAllBoxes = new boolean[26];
+        this.patterns = ConcurrentHashMap.newKeySet();
+        this.pruned = new LongAdder();
+        this.patternHits = new LongAdder();
+        this.nanos = new LongAdder();
+
+        int[] boxCount = new int[26];
+        int[] goalCount = new int[26];
+        for (char letter : initialState.boxes.letters) {
+            boxCount[letter - 'A']++;
+        }
+        for (char goal : Node.level.goalLetters()) {
+            goalCount[goal - 'a'] = Node.level.goalCells(goal).length;
+        }
+        for (int letter = 0; letter < 26; letter++) {
+            this.needsAllBoxes[letter] = goalCount[letter] > 0 && boxCount[letter] <= goalCount[letter];
+        }
+    }
+
+    // A detector for another search thread: shares the learned patterns and the statistics,
+    // but has its own scratch state.
+    public DeadlockDetector(DeadlockDetector shared) {
+        this.needsAllBoxes = shared.needsAllBoxes;
+        this.patterns = shared.patterns;
+        this.pruned = shared.pruned;
+        this.patternHits = shared.patternHits;
+        this.nanos = shared.nanos;
+    }
+
+    public boolean isDeadlocked(Node n) {
+        // Only a box move can freeze a box.
+        if (n.action == null || n.action.actionType == Command.Type.Move) {
+            return false;
+        }
+        long start = System.nanoTime();
+        boolean deadlocked = this.check(n, n.movedBoxTo());
+        this.nanos.add(System.nanoTime() - start);
+        if (deadlocked) {
+            this.pruned.increment();
+        }
+        return deadlocked;
+    }
+
+    private boolean check(Node n, int cell) {
+        int row = cell / Node.MAX_COL;
+        int col = cell % Node.MAX_COL;
+        long key = windowKey(n, row, col);
+        if (this.patterns.contains(key)) {
+            this.patternHits.increment();
+            return true;
+        }
+
+        this.assumedCount = 0;
+        this.frozenCount = 0;
+        this.minRow = this.maxRow = row;
+        this.minCol = this.maxCol = col;
+        if (!this.isFrozen(n, row, col)) {
+            return false;
+        }
+
+        boolean deadlocked = false;
+        for (int i = 0; i < this.frozenCount && !deadlocked; i++) {
+            int c = this.frozen[i];
+            deadlocked = this.isBadSpot(n.boxLetterAt(c / Node.MAX_COL, c % Node.MAX_COL), c / Node.MAX_COL, c % Node.MAX_COL);
+        }
+        if (deadlocked && this.minRow >= row - WINDOW && this.maxRow <= row + WINDOW
+                && this.minCol >= col - WINDOW && this.maxCol <= col + WINDOW) {
+            this.patterns.add(key);
+        }
+        return deadlocked;
+    }
+
+    private boolean isFrozen(Node n, int row, int col) {
+        this.assumed = push(this.assumed, this.assumedCount++, Node.cell(row, col));
+        int frozenMark = this.frozenCount;
+        boolean result = true;
+        for (Command.Dir dir : Command.Dir.values()) {
+            int dr = Command.dirToRowChange(dir);
+            int dc = Command.dirToColChange(dir);
+            boolean canMove = !this.isBlocked(n, row + dr, col + dc)
+                    && (this.hasRoom(n, row, col, row + dr, col + dc) || this.hasRoom(n, row + dr, col + dc, row, col));
+            if (canMove) {
+                result = false;
+                break;
+            }
+        }
+        this.assumedCount--;
+        if (result) {
+            this.frozen = push(this.frozen, this.frozenCount++, Node.cell(row, col));
+        } else {
+            // Anything proven below relied on this box being frozen.
+            this.frozenCount = frozenMark;
+        }
+        return result;
+    }
+
+    // True if the agent could stand next to (row, col) on a cell other than (exceptRow, exceptCol).
+    private boolean hasRoom(Node n, int row, int col, int exceptRow, int exceptCol) {
+        for (Command.Dir dir : Command.Dir.values()) {
+            int r = row + Command.dirToRowChange(dir);
+            int c = col + Command.dirToColChange(dir);
+            if ((r != exceptRow || c != exceptCol) && !this.isBlocked(n, r, c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isBlocked(Node n, int row, int col) {
+        this.minRow = Math.min(this.minRow, row);
+        this.maxRow = Math.max(this.maxRow, row);
+        this.minCol = Math.min(this.minCol, col);
+        this.maxCol = Math.max(this.maxCol, col);
+        if (Node.level.isWall(row, col)) {
+            return true;
+        }
+        if (n.boxLetterAt(row, col) == 0) {
+            return false;
+        }
+        int cell = Node.cell(row, col);
+        for (int i = 0; i < this.assumedCount; i++) {
+            if (this.assumed[i] == cell) {
+                return true;
+            }
+        }
+        return this.isFrozen(n, row, col);
+    }
+
+    private boolean isBadSpot(char letter, int row, int col) {
+        char goal = Node.level.goalAt(Node.cell(row, col));
+        if (goal == Character.toLowerCase(letter)) {
+            return false;
+        }
+        return goal > 0 || this.needsAllBoxes[letter - 'A'];
+    }
+
+    private static long windowKey(Node n, int row, int col) {
+        long key = 0x9E3779B97F4A7C15L * (Node.cell(row, col) + 1);
+        for (int r = Math.max(0, row - WINDOW); r <= Math.min(Node.MAX_ROW - 1, row + WINDOW); r++) {
+            for (int c = Math.max(0, col - WINDOW); c <= Math.min(Node.MAX_COL - 1, col + WINDOW); c++) {
+                char letter = n.boxLetterAt(r, c);
+                if (letter > 0) {
+                    key ^= Node.boxKey(letter, Node.cell(r, c));
+                }
+            }
+        }
+        return key;
+    }
+
+    private static int[] push(int[] stack, int index, int value) {
+        if (index == stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[index] = value;
+        return stack;
+    }
+
+    public String status() {
+        return String.format("#Deadlocks pruned: %d (%d by pattern), #Patterns: %d, Deadlock time: %3.2f s", this.pruned.sum(), this.patternHits.sum(),
+                this.patterns.size(), this.nanos.sum() / 1e9);
+    }
+}
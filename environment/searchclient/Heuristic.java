@@ -4,6 +4,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.lang.Math;
+import java.util.concurrent.atomic.LongAdder;
 
 import searchclient.NotImplementedException;
 import searchclient.HeuristicUtil.*;
@@ -11,17 +12,74 @@ import searchclient.HeuristicUtil.*;
 
 public abstract class Heuristic implements Comparator<Node> {
     
+    // Shared by all search threads evaluating with this heuristic.
+    private final LongAdder evaluations = new LongAdder();
+    private final BoxTermCache boxTerms = new BoxTermCache(18);
+
     public Heuristic(Node initialState) {	
         // Here's a chance to pre-process the static parts of the level.
         HeuristicUtil.initHeuristic(initialState);
     }
 
+    // h and f are computed once per node and cached on it; later calls only read the fields.
     public int h(Node n) {
-    	return HeuristicUtil.agentToClosestBoxManhattan(n) 
-        	+ HeuristicUtil.sumGoalsToClosestBoxManhattan(n);
+        this.evaluate(n);
+        return n.h;
+    }
+
+    public int f(Node n) {
+        this.evaluate(n);
+        return n.f;
+    }
+
+    private void evaluate(Node n) {
+        if (n.h < 0) {
+            n.h = this.computeH(n);
+            n.f = this.f(n.g(), n.h);
+            this.evaluations.increment();
+        }
     }
 
-    public abstract int f(Node n);
+    protected int computeH(Node n) {
+        return HeuristicUtil.agentToClosestBoxManhattan(n) + this.cachedBoxTerm(n);
+    }
+
+    // The part of h that only depends on the boxes. When the parent's arrays are at hand,
+    // boxTerm only updates them for the moved box, which is cheaper than a lookup and keeps the
+    // arrays flowing to the children; a lookup first measured slower even for Move children,
+    // whose term is just the sum of the parent's array. Otherwise, as for the states IDA*
+    // changes in place, the term is looked up by the Zobrist key of the boxes.
+    protected final int cachedBoxTerm(Node n) {
+        boolean incremental = n.parent != null && (n.parent.goalDistances != null || n.parent.matchingCosts != null);
+        if (incremental) {
+            return this.boxTerm(n);
+        }
+        long key = n.boxes.hash;
+        int term = this.boxTerms.get(key);
+        if (term >= 0) {
+            return term;
+        }
+        term = this.boxTerm(n);
+        this.boxTerms.put(key, term);
+        return term;
+    }
+
+    // Only the goals affected by the box moved into n are recomputed; see HeuristicUtil.goalDistances.
+    protected int boxTerm(Node n) {
+        n.goalDistances = HeuristicUtil.goalDistances(n);
+        return HeuristicUtil.sum(n.goalDistances);
+    }
+
+    protected abstract int f(int g, int h);
+
+    // Number of times h has actually been computed.
+    public long evaluations() {
+        return this.evaluations.sum();
+    }
+
+    public String cacheStatus() {
+        return this.boxTerms.status();
+    }
 
     @Override
     public int compare(Node n1, Node n2) {
@@ -34,8 +92,8 @@ public abstract class Heuristic implements Comparator<Node> {
         }
 
         @Override
-        public int f(Node n) {
-            return n.g() + this.h(n);
+        protected int f(int g, int h) {
+            return g + h;
         }
 
         @Override
@@ -53,8 +111,8 @@ public abstract class Heuristic implements Comparator<Node> {
         }
 
         @Override
-        public int f(Node n) {
-            return n.g() + this.W * this.h(n);
+        protected int f(int g, int h) {
+            return g + this.W * h;
         }
 
         @Override
@@ -63,14 +121,48 @@ public abstract class Heuristic implements Comparator<Node> {
         }
     }
 
+    // Admissible h: the sum over letters of a minimum-cost matching between the goals
+    // and boxes of that letter, using true distances. The agent term is left out since
+    // it could overestimate when boxes have to be moved out of the way first.
+    // W = 1 gives A*, larger values WA*.
+    public static class Matching extends Heuristic {
+        private int W;
+
+        public Matching(Node initialState, int W) {
+            super(initialState);
+            this.W = W;
+        }
+
+        @Override
+        protected int computeH(Node n) {
+            return this.cachedBoxTerm(n);
+        }
+
+        @Override
+        protected int boxTerm(Node n) {
+            n.matchingCosts = HeuristicUtil.matchingCosts(n);
+            return HeuristicUtil.sum(n.matchingCosts);
+        }
+
+        @Override
+        protected int f(int g, int h) {
+            return g + this.W * h;
+        }
+
+        @Override
+        public String toString() {
+            return this.W == 1 ? "Matching A* evaluation" : String.format("Matching WA*(%d) evaluation", this.W);
+        }
+    }
+
     public static class Greedy extends Heuristic {
         public Greedy(Node initialState) {
             super(initialState);
         }
 
         @Override
-        public int f(Node n) {
-            return this.h(n);
+        protected int f(int g, int h) {
+            return h;
         }
 
         @Override
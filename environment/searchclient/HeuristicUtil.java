@@ -2,8 +2,9 @@ package searchclient;
 
 import java.lang.Math;
 import java.lang.Character;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import searchclient.NotImplementedException;
 
@@ -12,93 +13,233 @@ public class HeuristicUtil {
 
     static HeuristicUtil instance;
 
-    private int[][] distancesMap;
-    private HashMap<Character, LinkedList<Integer>> goalMap;
+    // Distances are only stored between free (non-wall) cells, using the level's dense ids.
+    // distances[a * numFree + b] is the shortest path length between free cells a and b.
+    private static final char UNREACHABLE = Character.MAX_VALUE;
+    private final Level level;
+    private final int numFree;
+    private char[] distances;
+    // All goals by letter: goal i is at goalCells[i] and needs a box with letter goalBoxes[i].
+    private int[] goalCells;
+    private char[] goalBoxes;
 
-    private HeuristicUtil(Node initialState) {
+    private HeuristicUtil(Level level) {
+        this.level = level;
+        this.numFree = level.freeCount();
         makeAPSP();
-        initGoalMap(initialState);
+        initGoals();
     }
 
     // needs to be called before using anything HeursticUtil functionality
     public static void initHeuristic(Node initialState) {
-        if(instance == null) {
-            instance = new HeuristicUtil(initialState);
+        if(instance == null || instance.level != Node.level) {
+            instance = new HeuristicUtil(Node.level);
         }
     }
 
-    // maps goal char to its board locations (idx)
-    private void initGoalMap(Node initialState) {
-        goalMap = new HashMap<Character, LinkedList<Integer>>();
-
-        // Populate goals
-        for(int r = 0;  r < Node.MAX_ROW; r++) {
-            for(int c = 0; c < Node.MAX_COL; c++) {
-                char goalChr = initialState.goals[r][c];
-                if(goalChr != '\u0000') {
-                    int idx = HeuristicUtil.coordsToIdx(r, c);
-                    if (goalMap.get(goalChr) == null) {
-                        LinkedList<Integer> newList = new LinkedList<Integer>();
-                        newList.add(idx);
-                        goalMap.put(goalChr, newList);
-                    }
-                    else {
-                        goalMap.get(goalChr).add(idx);
-                    }
-                }
+    private void initGoals() {
+        goalCells = new int[level.goalCount];
+        goalBoxes = new char[level.goalCount];
+        int i = 0;
+        for (char goal : level.goalLetters()) {
+            for (int cell : level.goalCells(goal)) {
+                goalCells[i] = cell;
+                goalBoxes[i] = Character.toUpperCase(goal);
+                i++;
             }
         }
     }
 
-    private static int coordsToIdx(int row, int col) {
-        return row * Node.MAX_COL + col;
-    }
-
-    private static int[] idxToCoords(int idx) {
-        int[] result = new int[2];
-        result[0] = idx / Node.MAX_COL; // row
-        result[1] = idx % Node.MAX_COL; // col
-        return result;
+    // Shortest path distance between two board locations (cell indices).
+    private static int distance(int idx1, int idx2) {
+        Level level = instance.level;
+        char d = instance.distances[level.freeId(idx1) * instance.numFree + level.freeId(idx2)];
+        return d == UNREACHABLE ? Node.MAX_ROW * Node.MAX_COL : d;
     }
 
     public static int agentToClosestBoxManhattan(Node n) {
         // Subtract 1 because the agent only has to be next to the box to act on it.
-        return findClosestBoxDistance(n.agentRow, n.agentCol, n) - 1;
+        return findClosestBoxDistance(Node.cell(n.agentRow, n.agentCol), n) - 1;
     }
 
     public static int sumGoalsToClosestBoxManhattan(Node n) {
+        return sum(goalDistances(n));
+    }
+
+    public static int sum(int[] goalDistances) {
         int totalDist = 0;
-        // loop over all goals, find the closest box for each one.
-        for (char goal : instance.goalMap.keySet()) {
-            LinkedList<Integer> idxs = instance.goalMap.get(goal);
-            for (int idx : idxs) {
-                int[] loc = HeuristicUtil.idxToCoords(idx);
-                int dist = findClosestBoxDistance(loc[0], loc[1], n, goal);
-                totalDist += dist;
-            }
+        for (int dist : goalDistances) {
+            totalDist += dist;
         }
- 
         return totalDist;
+    }
+
+    // For each goal, the distance to the closest box of its letter (in goalCells order).
+    // If the parent's distances are cached on it, only goals of the box moved by n.action
+    // are revisited; Move actions share the parent's array unchanged.
+    public static int[] goalDistances(Node n) {
+        Node parent = n.parent;
+        if (parent == null || parent.goalDistances == null) {
+            int[] dists = new int[instance.goalCells.length];
+            for (int i = 0; i < dists.length; i++) {
+                dists[i] = findClosestBoxDistance(instance.goalCells[i], n, instance.goalBoxes[i]);
+            }
+            return dists;
+        }
 
+        if (n.action.actionType == Command.Type.Move) {
+            return parent.goalDistances;
+        }
+        int from = n.movedBoxFrom();
+        int to = n.movedBoxTo();
+        char letter = n.boxLetterAt(to / Node.MAX_COL, to % Node.MAX_COL);
+        int[] dists = parent.goalDistances.clone();
+        for (int i = 0; i < dists.length; i++) {
+            if (instance.goalBoxes[i] != letter) continue;
+            int goal = instance.goalCells[i];
+            int newDist = distance(to, goal);
+            if (newDist < dists[i]) {
+                dists[i] = newDist;
+            } else if (distance(from, goal) == dists[i]) {
+                // The moved box may have been the closest one.
+                dists[i] = findClosestBoxDistance(goal, n, letter);
+            }
+        }
+        return dists;
+    }
+
+    // For each goal letter (in alphabetical order), the cost of a minimum-cost matching
+    // between the goals and the boxes of that letter. Like goalDistances, children reuse
+    // the parent's array and only rematch the letter of the moved box.
+    public static int[] matchingCosts(Node n) {
+        Node parent = n.parent;
+        if (parent == null || parent.matchingCosts == null) {
+            char[] letters = instance.level.goalLetters();
+            int[] costs = new int[letters.length];
+            for (int i = 0; i < letters.length; i++) {
+                costs[i] = matchLetter(n, letters[i]);
+            }
+            return costs;
+        }
+        if (n.action.actionType == Command.Type.Move) {
+            return parent.matchingCosts;
+        }
+
+        int to = n.movedBoxTo();
+        char letter = Character.toLowerCase(n.boxLetterAt(to / Node.MAX_COL, to % Node.MAX_COL));
+        int[] costs = parent.matchingCosts;
+        char[] letters = instance.level.goalLetters();
+        for (int i = 0; i < letters.length; i++) {
+            if (letters[i] == letter) {
+                costs = costs.clone();
+                costs[i] = matchLetter(n, letter);
+                break;
+            }
+        }
+        return costs;
+    }
+
+    private static int matchLetter(Node n, char goal) {
+        int[] goalIdxs = instance.level.goalCells(goal);
+        char box = Character.toUpperCase(goal);
+        int numBoxes = 0;
+        for (int i = 0; i < n.boxes.size(); i++) {
+            if (n.boxes.letters[i] == box) numBoxes++;
+        }
+
+        // Rows are goals and columns boxes; transposed if there are fewer boxes than goals.
+        boolean transpose = numBoxes < goalIdxs.length;
+        int[][] cost = transpose ? new int[numBoxes][goalIdxs.length] : new int[goalIdxs.length][numBoxes];
+        int g = 0;
+        for (int goalIdx : goalIdxs) {
+            int b = 0;
+            for (int i = 0; i < n.boxes.size(); i++) {
+                if (n.boxes.letters[i] != box) continue;
+                int dist = distance(n.boxes.cells[i], goalIdx);
+                if (transpose) {
+                    cost[b][g] = dist;
+                } else {
+                    cost[g][b] = dist;
+                }
+                b++;
+            }
+            g++;
+        }
+        return minCostMatching(cost);
+    }
+
+    // Hungarian algorithm (shortest augmenting paths with potentials) for a rows x cols
+    // cost matrix with rows <= cols; every row is matched to a distinct column.
+    private static int minCostMatching(int[][] cost) {
+        int rows = cost.length;
+        if (rows == 0) return 0;
+        int cols = cost[0].length;
+        final int INF = Integer.MAX_VALUE / 2;
+        int[] u = new int[rows + 1];
+        int[] v = new int[cols + 1];
+        int[] match = new int[cols + 1]; // row (1-based) matched to column j, 0 if none
+        int[] way = new int[cols + 1];
+        int[] minv = new int[cols + 1];
+        boolean[] used = new boolean[cols + 1];
+        for (int i = 1; i <= rows; i++) {
+            match[0] = i;
+            int j0 = 0;
+            Arrays.fill(minv, INF);
+            Arrays.fill(used, false);
+            do {
+                used[j0] = true;
+                int i0 = match[j0], delta = INF, j1 = 0;
+                for (int j = 1; j <= cols; j++) {
+                    if (used[j]) continue;
+                    int cur = cost[i0 - 1][j - 1] - u[i0] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= cols; j++) {
+                    if (used[j]) {
+                        u[match[j]] += delta;
+                        v[j] -= delta;
+                    } else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (match[j0] != 0);
+            do {
+                int j1 = way[j0];
+                match[j0] = match[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int total = 0;
+        for (int j = 1; j <= cols; j++) {
+            if (match[j] != 0) total += cost[match[j] - 1][j - 1];
+        }
+        return total;
     }
 
     // If there's no target box char, send flag value of '0'.
-    private static int findClosestBoxDistance(int row, int col, Node n) {
-        return findClosestBoxDistance(row, col, n, '0');
+    private static int findClosestBoxDistance(int srcIdx, Node n) {
+        return findClosestBoxDistance(srcIdx, n, '0');
     }
 
     // Needs to take the target box letter as a parameter
-    private static int findClosestBoxDistance(int srcRow, int srcCol, Node n, char targetChr) {
+    private static int findClosestBoxDistance(int srcIdx, Node n, char targetChr) {
         targetChr = Character.toUpperCase(targetChr);
         int minDist = Node.MAX_ROW + Node.MAX_COL;
-        for (int r = 0; r < Node.MAX_ROW; r++) {
-            for (int c = 0; c < Node.MAX_COL; c++) {
-                char box = n.boxes[r][c];
-                if ((targetChr == '0' && box != '\u0000') || box  == targetChr) {
-                    int dist = instance.distancesMap[coordsToIdx(r, c)][coordsToIdx(srcRow, srcCol)];
-                    if (dist < minDist) {
-                        minDist = dist;
-                    }
+        for (int i = 0; i < n.boxes.size(); i++) {
+            char box = n.boxes.letters[i];
+            if (targetChr == '0' || box == targetChr) {
+                int dist = distance(n.boxes.cells[i], srcIdx);
+                if (dist < minDist) {
+                    minDist = dist;
                 }
             }
         }
@@ -106,48 +247,51 @@ public class HeuristicUtil {
     }
 
     private void makeAPSP() {
-        distancesMap = initDistanceMatrix();
-        int numVertices = Node.MAX_ROW * Node.MAX_COL;
-        for(int k = 1; k < numVertices; k++) {
-            for(int i = 1; i < numVertices; i++) {
-                for(int j = 1; j < numVertices; j++) {
-                    if(distancesMap[i][j] > distancesMap[i][k] + distancesMap[k][j]) {
-                        distancesMap[i][j] = distancesMap[i][k] + distancesMap[k][j];
-                    }
-                }
-            }
-        }
+        distances = new char[numFree * numFree];
+        ForkJoinPool.commonPool().invoke(new BFSTask(0, numFree));
     }
 
-    private int[][] initDistanceMatrix() {
-        int numVertices = Node.MAX_ROW * Node.MAX_COL;
-        int[][] distances = new int[numVertices][numVertices];
-        for(int u = 0; u < numVertices; u++) {
-            for(int v = 0; v < numVertices; v++) {
-                int[] uLocCoords = idxToCoords(u);
-                int[] vLocCoords = idxToCoords(v);
-                if(u == v) {
-                    distances[u][v] = 0;
-                }else if(cellsAreAdjacent(uLocCoords, vLocCoords) && cellIsNotWall(uLocCoords) && cellIsNotWall(vLocCoords)) {
-                    distances[u][v] = 1;
-                }else {
-                    distances[u][v] = numVertices;
+    // Fills the distance rows of free cells [from, to) with one BFS per source cell.
+    private void bfsRows(int from, int to) {
+        int[] queue = new int[numFree];
+        for(int src = from; src < to; src++) {
+            int row = src * numFree;
+            Arrays.fill(distances, row, row + numFree, UNREACHABLE);
+            distances[row + src] = 0;
+            queue[0] = src;
+            int head = 0, tail = 1;
+            while(head < tail) {
+                int u = queue[head++];
+                char next = (char) (distances[row + u] + 1);
+                for(Command.Dir d : Command.Dir.values()) {
+                    int v = level.neighbour(u, d);
+                    if(v >= 0 && distances[row + v] == UNREACHABLE) {
+                        distances[row + v] = next;
+                        queue[tail++] = v;
+                    }
                 }
             }
         }
-        return distances;
     }
 
-    private boolean cellIsNotWall(int[] loc) {
-        if(loc[0] >= Node.MAX_ROW || loc[0] < 0 || loc[1] < 0 || loc[1] >= Node.MAX_COL) {
-            return false;
+    private class BFSTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 32;
+        private final int from, to;
+
+        BFSTask(int from, int to) {
+            this.from = from;
+            this.to = to;
         }
-        return !Node.walls[loc[0]][loc[1]];
-    }
 
-    private boolean cellsAreAdjacent(int[] loc1, int[] loc2) {
-        if(loc1[0] == loc2[0] && Math.abs(loc1[1] - loc2[1]) == 1) return true;
-        if(loc1[1] == loc2[1] && Math.abs(loc1[0] - loc2[0]) == 1) return true;
-        return false;
+        @Override
+        protected void compute() {
+            if(to - from <= THRESHOLD) {
+                bfsRows(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new BFSTask(from, mid), new BFSTask(mid, to));
+            }
+        }
     }
 }
\ No newline at end of file
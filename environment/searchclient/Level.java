@@ -0,0 +1,154 @@
+package searchclient;
+
+import java.util.BitSet;
+import java.util.List;
+
+// The static part of a level: walls and goals, built once from the level text and never
+// changed afterwards. Cells are numbered row * cols + col, counting from the top-left corner.
+// Walls and goals are bitsets over the cells, and the goal letter of every cell is kept too.
+// The free (non-wall) cells also get dense ids with their neighbours precomputed, and the
+// goal cells are listed per letter, so hot paths index the level with plain ints.
+public final class Level {
+    public final int rows;
+    public final int cols;
+    public final int goalCount;
+
+    private final BitSet walls;
+    private final BitSet goals;
+    // Lowercase goal letter by cell, 0 where there is no goal.
+    private final char[] goalLetters;
+
+    // freeIds[cell] is the dense id of a free cell, -1 for walls; freeCells maps back.
+    private final int[] freeIds;
+    private final int[] freeCells;
+    // Four entries per free id in Command.Dir order: the id of the free neighbour, or -1.
+    private final int[] neighbours;
+
+    // Goal cells of each letter in ascending order, indexed by letter - 'a'.
+    private final int[][] goalsByLetter;
+    // The letters that have goals, in alphabetical order.
+    private final char[] letters;
+
+    // Reads walls ('+') and goals ('a' to 'z') from the lines of a level; everything else is
+    // left to the caller. Lines may differ in length, the level is as wide as the longest.
+    public Level(List<String> lines) {
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, line.length());
+        }
+        this.rows = lines.size();
+        this.cols = width;
+        int cells = this.rows * this.cols;
+
+        this.walls = new BitSet(cells);
+        this.goals = new BitSet(cells);
+        this.goalLetters = new char[cells];
+        int[] perLetter = new int[26];
+        for (int row = 0; row < this.rows; row++) {
+            String line = lines.get(row);
+            for (int col = 0; col < line.length(); col++) {
+                char chr = line.charAt(col);
+                if (chr == '+') {
+                    this.walls.set(this.cell(row, col));
+                } else if ('a' <= chr && chr <= 'z') {
+                    this.goals.set(this.cell(row, col));
+                    this.goalLetters[this.cell(row, col)] = chr;
+                    perLetter[chr - 'a']++;
+                }
+            }
+        }
+        this.goalCount = this.goals.cardinality();
+
+        this.goalsByLetter = new int[26][];
+        int letterCount = 0;
+        for (int letter = 0; letter < 26; letter++) {
+            this.goalsByLetter[letter] = new int[perLetter[letter]];
+            if (perLetter[letter] > 0) {
+                letterCount++;
+            }
+        }
+        this.letters = new char[letterCount];
+        for (int letter = 0, i = 0; letter < 26; letter++) {
+            if (perLetter[letter] > 0) {
+                this.letters[i++] = (char) ('a' + letter);
+            }
+        }
+        int[] filled = new int[26];
+        for (int cell = this.goals.nextSetBit(0); cell >= 0; cell = this.goals.nextSetBit(cell + 1)) {
+            int letter = this.goalLetters[cell] - 'a';
+            this.goalsByLetter[letter][filled[letter]++] = cell;
+        }
+
+        this.freeIds = new int[cells];
+        this.freeCells = new int[cells - this.walls.cardinality()];
+        int free = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (this.walls.get(cell)) {
+                this.freeIds[cell] = -1;
+            } else {
+                this.freeIds[cell] = free;
+                this.freeCells[free++] = cell;
+            }
+        }
+        this.neighbours = new int[free * 4];
+        for (int id = 0; id < free; id++) {
+            int row = this.freeCells[id] / this.cols;
+            int col = this.freeCells[id] % this.cols;
+            for (Command.Dir d : Command.Dir.values()) {
+                int r = row + Command.dirToRowChange(d);
+                int c = col + Command.dirToColChange(d);
+                this.neighbours[id * 4 + d.ordinal()] = this.isWall(r, c) ? -1 : this.freeIds[this.cell(r, c)];
+            }
+        }
+    }
+
+    public int cell(int row, int col) {
+        return row * this.cols + col;
+    }
+
+    public boolean isWall(int cell) {
+        return this.walls.get(cell);
+    }
+
+    // Also true outside the level.
+    public boolean isWall(int row, int col) {
+        return row < 0 || row >= this.rows || col < 0 || col >= this.cols || this.walls.get(this.cell(row, col));
+    }
+
+    public boolean isGoal(int cell) {
+        return this.goals.get(cell);
+    }
+
+    // The lowercase letter of the goal on the cell, or 0 if there is none.
+    public char goalAt(int cell) {
+        return this.goalLetters[cell];
+    }
+
+    public int freeCount() {
+        return this.freeCells.length;
+    }
+
+    // Dense id of a free cell, or -1 for a wall.
+    public int freeId(int cell) {
+        return this.freeIds[cell];
+    }
+
+    public int freeCell(int id) {
+        return this.freeCells[id];
+    }
+
+    // Id of the free neighbour of free cell 'id' in direction d, or -1.
+    public int neighbour(int id, Command.Dir d) {
+        return this.neighbours[id * 4 + d.ordinal()];
+    }
+
+    // Cells of the goals with the given lowercase letter. The array is shared; do not change it.
+    public int[] goalCells(char letter) {
+        return this.goalsByLetter[letter - 'a'];
+    }
+
+    // The lowercase letters that have goals, in alphabetical order. The array is shared.
+    public char[] goalLetters() {
+        return this.letters;
+    }
+}
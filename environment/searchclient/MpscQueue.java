@@ -0,0 +1,42 @@
+package searchclient;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+// Unbounded lock-free queue for many producers and a single consumer, after Vyukov's
+// non-intrusive MPSC queue. A producer swaps its link in as the new tail with one atomic
+// exchange and then links the old tail to it; unlike ConcurrentLinkedQueue there is no CAS
+// loop to retry under contention. Only one thread may call poll.
+//
+// Between the exchange and the linking, the consumer cannot see the new element or anything
+// after it, so poll may briefly return null while an offer is under way.
+public class MpscQueue<T> {
+    private static class Link<T> {
+        T value;
+        volatile Link<T> next;
+
+        Link(T value) {
+            this.value = value;
+        }
+    }
+
+    // The consumer's side: a link whose value has already been taken.
+    private Link<T> head = new Link<T>(null);
+    private final AtomicReference<Link<T>> tail = new AtomicReference<Link<T>>(this.head);
+
+    public void offer(T value) {
+        Link<T> link = new Link<T>(value);
+        this.tail.getAndSet(link).next = link;
+    }
+
+    // The oldest element, or null if there is none (yet).
+    public T poll() {
+        Link<T> next = this.head.next;
+        if (next == null) {
+            return null;
+        }
+        T value = next.value;
+        next.value = null;
+        this.head = next;
+        return value;
+    }
+}
@@ -1,48 +1,205 @@
 package searchclient;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Random;
 
 import searchclient.Command.Type;
 
 public class Node {
-	private static final Random RND = new Random(1);
+	// Children are shuffled unless disabled; see expand.
+	private static boolean shuffle = true;
 
+	// The level being solved; MAX_ROW and MAX_COL mirror its size.
+	public static Level level;
 	public static int MAX_ROW;
 	public static int MAX_COL;
 
 	public int agentRow;
 	public int agentCol;
 
-	// Arrays are indexed from the top-left of the level, with first index being row and second being column.
-	// Row 0: (0,0) (0,1) (0,2) (0,3) ...
-	// Row 1: (1,0) (1,1) (1,2) (1,3) ...
-	// Row 2: (2,0) (2,1) (2,2) (2,3) ...
-	// ...
-	// (Start in the top left corner, first go down, then go right)
-	// E.g. this.walls[2] is an array of booleans having size MAX_COL.
-	// this.walls[row][col] is true if there's a wall at (row, col)
-	//
-
-	public static boolean[][] walls;
-	public static char[][] goals;
-	public char[][] boxes;
-	
+	// Boxes are stored as cell indices (row * MAX_COL + col) in an immutable layer that is
+	// shared with every node having the same boxes; see BoxLayer.
+	public BoxLayer boxes = BoxLayer.EMPTY;
+
 	public Node parent;
 	public Command action;
+	// Id of the parent in a NodeArena once the parent link has been detached; -1 otherwise.
+	int parentId = -1;
 
 	private int g;
-	
-	private int _hash = 0;
 
-	public static void initNodeStatics(int max_row, int max_col) {
-		MAX_ROW = max_row;
-		MAX_COL = max_col;
-		walls = new boolean[MAX_ROW][MAX_COL];
-		goals = new char[MAX_ROW][MAX_COL];
+	// Set once by Heuristic when the node is first evaluated; h < 0 means not yet evaluated.
+	int h = -1;
+	int f;
+	// Per-goal closest box distances backing h, reused incrementally by the children.
+	int[] goalDistances;
+	int[] matchingCosts;
+
+	// Actions by agent cell, built once per level: entries actionStart[cell] up to
+	// actionStart[cell + 1] hold each command that walls do not rule out on that cell, with the
+	// agent's target cell and, for Push and Pull, the cells the box moves from and to.
+	private static int[] actionStart;
+	private static Command[] actionCommand;
+	private static int[] actionAgentTo;
+	private static int[] actionBoxFrom;
+	private static int[] actionBoxTo;
+
+	// Zobrist keys, indexed by cell; boxes additionally by letter. Only the dynamic
+	// parts of a state (agent and boxes) are hashed, walls and goals never change.
+	private static long[] zobristAgent;
+	private static long[][] zobristBox;
+
+	// Maintained incrementally as the agent and boxes move.
+	private long zobrist;
+
+	// Switches to a new level; nodes of the previous one must no longer be used.
+	public static void setLevel(Level newLevel) {
+		level = newLevel;
+		MAX_ROW = level.rows;
+		MAX_COL = level.cols;
+
+		Random rnd = new Random(MAX_ROW * 31 + MAX_COL);
+		zobristAgent = new long[MAX_ROW * MAX_COL];
+		zobristBox = new long[26][MAX_ROW * MAX_COL];
+		for (int i = 0; i < zobristAgent.length; i++) {
+			zobristAgent[i] = rnd.nextLong();
+			for (int letter = 0; letter < 26; letter++) {
+				zobristBox[letter][i] = rnd.nextLong();
+			}
+		}
+		BoxLayer.clearInterned();
+	}
+
+	// Must be called on the initial state once the level has been parsed.
+	public void initInitialState() {
+		this.initDerived();
+		initActionTables();
+	}
+
+	private static void initActionTables() {
+		int cells = MAX_ROW * MAX_COL;
+		int max = cells * Command.EVERY.length;
+		actionStart = new int[cells + 1];
+		Command[] commands = new Command[max];
+		int[] agentTo = new int[max];
+		int[] boxFrom = new int[max];
+		int[] boxTo = new int[max];
+		int count = 0;
+		for (int cell = 0; cell < cells; cell++) {
+			actionStart[cell] = count;
+			int row = cell / MAX_COL;
+			int col = cell % MAX_COL;
+			if (level.isWall(cell)) {
+				continue;
+			}
+			for (Command c : Command.EVERY) {
+				int agentRow = row + Command.dirToRowChange(c.dir1);
+				int agentCol = col + Command.dirToColChange(c.dir1);
+				if (isWall(agentRow, agentCol)) {
+					continue;
+				}
+				int from = -1;
+				int to = -1;
+				if (c.actionType == Type.Push) {
+					from = cell(agentRow, agentCol);
+					int toRow = agentRow + Command.dirToRowChange(c.dir2);
+					int toCol = agentCol + Command.dirToColChange(c.dir2);
+					if (isWall(toRow, toCol)) {
+						continue;
+					}
+					to = cell(toRow, toCol);
+				} else if (c.actionType == Type.Pull) {
+					int fromRow = row + Command.dirToRowChange(c.dir2);
+					int fromCol = col + Command.dirToColChange(c.dir2);
+					if (isWall(fromRow, fromCol)) {
+						continue;
+					}
+					from = cell(fromRow, fromCol);
+					to = cell;
+				}
+				commands[count] = c;
+				agentTo[count] = cell(agentRow, agentCol);
+				boxFrom[count] = from;
+				boxTo[count] = to;
+				count++;
+			}
+		}
+		actionStart[cells] = count;
+		actionCommand = Arrays.copyOf(commands, count);
+		actionAgentTo = Arrays.copyOf(agentTo, count);
+		actionBoxFrom = Arrays.copyOf(boxFrom, count);
+		actionBoxTo = Arrays.copyOf(boxTo, count);
+	}
+
+	private static boolean isWall(int row, int col) {
+		return level.isWall(row, col);
+	}
+
+	// Computes the Zobrist key from the agent and boxes.
+	private void initDerived() {
+		this.zobrist = zobristAgent[cell(this.agentRow, this.agentCol)] ^ this.boxes.hash;
+	}
+
+	// The state with the agent at (row, col) and every goal covered by a box of its letter,
+	// which is the only goal configuration when each letter has as many boxes as goals.
+	public static Node goalState(int row, int col) {
+		Node n = new Node(null);
+		n.agentRow = row;
+		n.agentCol = col;
+		int[] cells = new int[level.goalCount];
+		char[] letters = new char[level.goalCount];
+		int i = 0;
+		for (int cell = 0; cell < MAX_ROW * MAX_COL; cell++) {
+			char goal = level.goalAt(cell);
+			if (goal > 0) {
+				cells[i] = cell;
+				letters[i] = Character.toUpperCase(goal);
+				i++;
+			}
+		}
+		n.boxes = BoxLayer.of(cells, letters);
+		n.initDerived();
+		return n;
+	}
+
+	// Size of the compact binary form written by writeState: the agent's cell, then the
+	// cell and letter of every box. Cells are stored as 16 bits.
+	public static int stateBytes(int boxCount) {
+		return 2 + 3 * boxCount;
+	}
+
+	public void writeState(ByteBuffer buf) {
+		buf.putChar((char) cell(this.agentRow, this.agentCol));
+		for (int i = 0; i < this.boxes.size(); i++) {
+			buf.putChar((char) this.boxes.cells[i]);
+			buf.put((byte) this.boxes.letters[i]);
+		}
+	}
+
+	// Reads a state written by writeState as a node without parent at depth g.
+	public static Node readState(ByteBuffer buf, int boxCount, int g) {
+		int agent = buf.getChar();
+		int[] cells = new int[boxCount];
+		char[] letters = new char[boxCount];
+		for (int i = 0; i < boxCount; i++) {
+			cells[i] = buf.getChar();
+			letters[i] = (char) buf.get();
+		}
+		return state(agent, BoxLayer.of(cells, letters), g);
+	}
+
+	// A node without parent link for a state kept in flat form, e.g. in a StateFile or NodeArena.
+	public static Node state(int agentCell, BoxLayer boxes, int g) {
+		Node n = new Node(null);
+		n.g = g;
+		n.agentRow = agentCell / MAX_COL;
+		n.agentCol = agentCell % MAX_COL;
+		n.boxes = boxes;
+		n.initDerived();
+		return n;
 	}
 
 	public Node(Node parent) {
@@ -52,105 +209,321 @@ public class Node {
 		} else {
 			this.g = parent.g() + 1;
 		}
-		this.boxes = new char[MAX_ROW][MAX_COL];
+	}
+
+	public static int cell(int row, int col) {
+		return row * MAX_COL + col;
 	}
 
 	public int g() {
 		return this.g;
 	}
 
+	// The root is the only node not reached by an action. Testing the parent link instead would
+	// also match nodes detached into a NodeArena, which have none.
 	public boolean isInitialState() {
-		return this.parent == null;
+		return this.action == null;
 	}
 
 	public boolean isGoalState() {
-		for (int row = 1; row < MAX_ROW - 1; row++) {
-			for (int col = 1; col < MAX_COL - 1; col++) {
-				char g = goals[row][col];
-				char b = Character.toLowerCase(boxes[row][col]);
-				if (g > 0 && b != g) {
-					return false;
-				}
-			}
-		}
-		return true;
+		return this.boxes.goalsSatisfied == level.goalCount;
 	}
 
-	public ArrayList<Node> getExpandedNodes() {
-		ArrayList<Node> expandedNodes = new ArrayList<Node>(Command.EVERY.length);
-		for (Command c : Command.EVERY) {
-			// Determine applicability of action
-			int newAgentRow = this.agentRow + Command.dirToRowChange(c.dir1);
-			int newAgentCol = this.agentCol + Command.dirToColChange(c.dir1);
+	public static void setShuffle(boolean enabled) {
+		shuffle = enabled;
+	}
 
+	// Writes the children of this node into 'children', which needs room for
+	// Command.EVERY.length nodes, and returns how many there are. Nothing but the children
+	// themselves is allocated. Unless disabled with setShuffle, the children are shuffled in an
+	// order that only depends on this state, so it is the same in every run and on every thread.
+	public int expand(Node[] children) {
+		int count = 0;
+		int agent = cell(this.agentRow, this.agentCol);
+		for (int i = actionStart[agent]; i < actionStart[agent + 1]; i++) {
+			Command c = actionCommand[i];
+			int agentTo = actionAgentTo[i];
 			if (c.actionType == Type.Move) {
-				// Check if there's a wall or box on the cell to which the agent is moving
-				if (this.cellIsFree(newAgentRow, newAgentCol)) {
-					Node n = this.ChildNode();
-					n.action = c;
-					n.agentRow = newAgentRow;
-					n.agentCol = newAgentCol;
-					expandedNodes.add(n);
+				// The cell the agent moves to must not hold a box
+				if (this.boxIndex(agentTo) >= 0) {
+					continue;
 				}
 			} else if (c.actionType == Type.Push) {
-				// Make sure that there's actually a box to move
-				if (this.boxAt(newAgentRow, newAgentCol)) {
-					int newBoxRow = newAgentRow + Command.dirToRowChange(c.dir2);
-					int newBoxCol = newAgentCol + Command.dirToColChange(c.dir2);
-					// .. and that new cell of box is free
-					if (this.cellIsFree(newBoxRow, newBoxCol)) {
-						Node n = this.ChildNode();
-						n.action = c;
-						n.agentRow = newAgentRow;
-						n.agentCol = newAgentCol;
-						n.boxes[newBoxRow][newBoxCol] = this.boxes[newAgentRow][newAgentCol];
-						n.boxes[newAgentRow][newAgentCol] = 0;
-						expandedNodes.add(n);
-					}
+				// There must be a box to push, into a free cell that is not dead for it
+				int box = this.boxIndex(actionBoxFrom[i]);
+				if (box < 0 || this.boxIndex(actionBoxTo[i]) >= 0 || DeadSquares.isDead(this.boxes.letters[box], actionBoxTo[i])) {
+					continue;
 				}
-			} else if (c.actionType == Type.Pull) {
-				// Cell is free where agent is going
-				if (this.cellIsFree(newAgentRow, newAgentCol)) {
-					int boxRow = this.agentRow + Command.dirToRowChange(c.dir2);
-					int boxCol = this.agentCol + Command.dirToColChange(c.dir2);
-					// .. and there's a box in "dir2" of the agent
-					if (this.boxAt(boxRow, boxCol)) {
-						Node n = this.ChildNode();
-						n.action = c;
-						n.agentRow = newAgentRow;
-						n.agentCol = newAgentCol;
-						n.boxes[this.agentRow][this.agentCol] = this.boxes[boxRow][boxCol];
-						n.boxes[boxRow][boxCol] = 0;
-						expandedNodes.add(n);
-					}
+			} else {
+				// The agent's target must be free, with a box in "dir2" that may enter the agent's cell
+				if (this.boxIndex(agentTo) >= 0) {
+					continue;
+				}
+				int box = this.boxIndex(actionBoxFrom[i]);
+				if (box < 0 || DeadSquares.isDead(this.boxes.letters[box], agent)) {
+					continue;
 				}
 			}
+			Node n = this.ChildNode();
+			n.action = c;
+			n.moveAgent(agentTo / MAX_COL, agentTo % MAX_COL);
+			if (c.actionType != Type.Move) {
+				n.moveBox(actionBoxFrom[i], actionBoxTo[i]);
+			}
+			if (Tunnels.enabled()) {
+				n = n.followTunnel();
+			}
+			children[count++] = n;
+		}
+		if (shuffle) {
+			this.shuffle(children, count);
+		}
+		return count;
+	}
+
+	// Fisher-Yates shuffle driven by an xorshift generator seeded with the Zobrist key.
+	private void shuffle(Node[] children, int count) {
+		long x = this.zobrist | 1;
+		for (int i = count - 1; i > 0; i--) {
+			x ^= x << 13;
+			x ^= x >>> 7;
+			x ^= x << 17;
+			int j = (int) ((x >>> 1) % (i + 1));
+			Node tmp = children[i];
+			children[i] = children[j];
+			children[j] = tmp;
+		}
+	}
+
+	// Convenience form of expand for code outside the hot loops.
+	public ArrayList<Node> getExpandedNodes() {
+		Node[] children = new Node[Command.EVERY.length];
+		int count = this.expand(children);
+		ArrayList<Node> expandedNodes = new ArrayList<Node>(count);
+		for (int i = 0; i < count; i++) {
+			expandedNodes.add(children[i]);
 		}
-		Collections.shuffle(expandedNodes, RND);
 		return expandedNodes;
 	}
 
+	// The child for the single action c, without following tunnels; null if c is not applicable.
+	public Node child(Command c) {
+		if (!this.isApplicable(c)) {
+			return null;
+		}
+		Node n = this.ChildNode();
+		n.perform(c);
+		return n;
+	}
+
+	// Repeats this.action through a tunnel, one chained node per step; see Tunnels.
+	private Node followTunnel() {
+		Node n = this;
+		while (Tunnels.continues(n) && n.isApplicable(n.action)) {
+			Node next = n.ChildNode();
+			next.perform(n.action);
+			n = next;
+		}
+		return n;
+	}
+
+	private boolean isApplicable(Command c) {
+		int newAgentRow = this.agentRow + Command.dirToRowChange(c.dir1);
+		int newAgentCol = this.agentCol + Command.dirToColChange(c.dir1);
+
+		if (c.actionType == Type.Move) {
+			// Check if there's a wall or box on the cell to which the agent is moving
+			return this.cellIsFree(newAgentRow, newAgentCol);
+		} else if (c.actionType == Type.Push) {
+			// Make sure that there's actually a box to move
+			if (!this.boxAt(newAgentRow, newAgentCol)) {
+				return false;
+			}
+			int newBoxRow = newAgentRow + Command.dirToRowChange(c.dir2);
+			int newBoxCol = newAgentCol + Command.dirToColChange(c.dir2);
+			// .. and that new cell of box is free and not a dead square for the box
+			return this.cellIsFree(newBoxRow, newBoxCol)
+					&& !DeadSquares.isDead(this.boxLetterAt(newAgentRow, newAgentCol), newBoxRow, newBoxCol);
+		} else {
+			// Cell is free where agent is going
+			if (!this.cellIsFree(newAgentRow, newAgentCol)) {
+				return false;
+			}
+			int boxRow = this.agentRow + Command.dirToRowChange(c.dir2);
+			int boxCol = this.agentCol + Command.dirToColChange(c.dir2);
+			// .. and there's a box in "dir2" of the agent, which may enter the agent's cell
+			return this.boxAt(boxRow, boxCol)
+					&& !DeadSquares.isDead(this.boxLetterAt(boxRow, boxCol), this.agentRow, this.agentCol);
+		}
+	}
+
+	// Changes the agent and boxes according to c, which must be applicable.
+	private void perform(Command c) {
+		int oldAgentCell = cell(this.agentRow, this.agentCol);
+		this.action = c;
+		this.moveAgent(this.agentRow + Command.dirToRowChange(c.dir1), this.agentCol + Command.dirToColChange(c.dir1));
+		if (c.actionType == Type.Push) {
+			int boxCell = cell(this.agentRow, this.agentCol);
+			this.moveBox(boxCell, boxCell + dirToCellChange(c.dir2));
+		} else if (c.actionType == Type.Pull) {
+			this.moveBox(oldAgentCell + dirToCellChange(c.dir2), oldAgentCell);
+		}
+	}
+
+	// A copy of this state without a parent, meant to be changed in place with apply and undo.
+	public Node detachedCopy() {
+		Node copy = this.ChildNode();
+		copy.parent = null;
+		copy.g = this.g;
+		copy.action = this.action;
+		return copy;
+	}
+
+	// Child in which the agent first walks 'walk' steps to the free cell (row, col) and then
+	// performs c; null if c is not applicable there. For searches that treat the walk and the
+	// box move as one step, so only c is recorded as the child's action.
+	public Node macroChild(int row, int col, int walk, Command c) {
+		Node n = this.ChildNode();
+		n.g += walk;
+		n.moveAgent(row, col);
+		if (!n.isApplicable(c)) {
+			return null;
+		}
+		n.perform(c);
+		return n;
+	}
+
+	// Applies c to this node in place, turning it into the child getExpandedNodes would
+	// generate for c. Returns false and leaves the node unchanged if c is not applicable.
+	// Cached heuristic values are cleared, since they belonged to the previous state.
+	public boolean apply(Command c) {
+		if (!this.isApplicable(c)) {
+			return false;
+		}
+		this.perform(c);
+		this.g++;
+		this.clearEvaluation();
+		return true;
+	}
+
+	// Reverts apply(c). The action leading to the restored state is not known here, so the
+	// caller has to set it again if it needs it.
+	public void undo(Command c) {
+		int agentCell = cell(this.agentRow, this.agentCol);
+		int prevRow = this.agentRow - Command.dirToRowChange(c.dir1);
+		int prevCol = this.agentCol - Command.dirToColChange(c.dir1);
+		if (c.actionType == Type.Push) {
+			this.moveBox(agentCell + dirToCellChange(c.dir2), agentCell);
+		}
+		this.moveAgent(prevRow, prevCol);
+		if (c.actionType == Type.Pull) {
+			this.moveBox(cell(prevRow, prevCol), cell(prevRow, prevCol) + dirToCellChange(c.dir2));
+		}
+		this.action = null;
+		this.g--;
+		this.clearEvaluation();
+	}
+
+	private void clearEvaluation() {
+		this.h = -1;
+		this.goalDistances = null;
+		this.matchingCosts = null;
+	}
+
 	private boolean cellIsFree(int row, int col) {
-		return !this.walls[row][col] && this.boxes[row][col] == 0;
+		int cell = cell(row, col);
+		return !level.isWall(cell) && this.boxIndex(cell) < 0;
 	}
 
 	private boolean boxAt(int row, int col) {
-		return this.boxes[row][col] > 0;
+		return this.boxIndex(cell(row, col)) >= 0;
+	}
+
+	// Returns the letter of the box at (row, col), or 0 if there is none.
+	public char boxLetterAt(int row, int col) {
+		return this.boxes.letterAt(cell(row, col));
 	}
 
+	// Returns the position of the box at the given cell in the box layer, or a negative number if there is none.
+	private int boxIndex(int cell) {
+		return this.boxes.indexOf(cell);
+	}
+
+	static boolean goalMatches(int cell, char boxLetter) {
+		return level.goalAt(cell) == Character.toLowerCase(boxLetter);
+	}
+
+	// Used while parsing the level.
+	public void addBox(int row, int col, char letter) {
+		this.boxes = this.boxes.withBox(cell(row, col), letter);
+	}
+
+	// Moves the box at cell 'from' to the free cell 'to'. The layer is replaced, never changed,
+	// since other nodes may share it.
+	private void moveBox(int from, int to) {
+		BoxLayer moved = this.boxes.moved(from, to);
+		this.zobrist ^= this.boxes.hash ^ moved.hash;
+		this.boxes = moved;
+	}
+
+	private void moveAgent(int row, int col) {
+		this.zobrist ^= zobristAgent[cell(this.agentRow, this.agentCol)] ^ zobristAgent[cell(row, col)];
+		this.agentRow = row;
+		this.agentCol = col;
+	}
+
+	// Cell the box moved by this.action came from; the action must be a Push or Pull.
+	public int movedBoxFrom() {
+		if (this.action.actionType == Type.Push) {
+			return cell(this.agentRow, this.agentCol);
+		}
+		return this.movedBoxTo() + dirToCellChange(this.action.dir2);
+	}
+
+	// Cell the box moved by this.action ended up in; the action must be a Push or Pull.
+	// Only the agent's position is used, so this also works for nodes changed in place.
+	public int movedBoxTo() {
+		if (this.action.actionType == Type.Push) {
+			return cell(this.agentRow, this.agentCol) + dirToCellChange(this.action.dir2);
+		}
+		return cell(this.agentRow, this.agentCol) - dirToCellChange(this.action.dir1);
+	}
+
+	private static int dirToCellChange(Command.Dir d) {
+		return Command.dirToRowChange(d) * MAX_COL + Command.dirToColChange(d);
+	}
+
+	// Zobrist key of a box with the given letter on the given cell.
+	static long boxKey(char letter, int cell) {
+		return zobristBox[letter - 'A'][cell];
+	}
+
+	// Zobrist key of the agent on the given cell.
+	static long agentKey(int cell) {
+		return zobristAgent[cell];
+	}
+
+	public long zobristHash() {
+		return this.zobrist;
+	}
 
 	private Node ChildNode() {
 		Node copy = new Node(this);
-		for (int row = 0; row < MAX_ROW; row++) {
-			System.arraycopy(this.boxes[row], 0, copy.boxes[row], 0, MAX_COL);
-		}
+		copy.boxes = this.boxes;
+		copy.agentRow = this.agentRow;
+		copy.agentCol = this.agentCol;
+		copy.zobrist = this.zobrist;
 		return copy;
 	}
 
+	// Follows the parent links; nodes detached into a NodeArena use NodeArena.extractPlan.
 	public LinkedList<Node> extractPlan() {
 		LinkedList<Node> plan = new LinkedList<Node>();
 		Node n = this;
 		while (!n.isInitialState()) {
+			if (n.parent == null) {
+				throw new IllegalStateException("Node was detached into a NodeArena");
+			}
 			plan.addFirst(n);
 			n = n.parent;
 		}
@@ -159,17 +532,7 @@ public class Node {
 
 	@Override
 	public int hashCode() {
-		if (this._hash == 0) {
-			final int prime = 31;
-			int result = 1;
-			result = prime * result + this.agentCol;
-			result = prime * result + this.agentRow;
-			result = prime * result + Arrays.deepHashCode(this.boxes);
-			result = prime * result + Arrays.deepHashCode(this.goals);
-			result = prime * result + Arrays.deepHashCode(this.walls);
-			this._hash = result;
-		}
-		return this._hash;
+		return (int) (this.zobrist ^ (this.zobrist >>> 32));
 	}
 
 	@Override
@@ -181,13 +544,11 @@ public class Node {
 		if (this.getClass() != obj.getClass())
 			return false;
 		Node other = (Node) obj;
-		if (this.agentRow != other.agentRow || this.agentCol != other.agentCol)
+		if (this.zobrist != other.zobrist)
 			return false;
-		if (!Arrays.deepEquals(this.boxes, other.boxes))
-			return false;
-		if (!Arrays.deepEquals(this.goals, other.goals))
+		if (this.agentRow != other.agentRow || this.agentCol != other.agentCol)
 			return false;
-		if (!Arrays.deepEquals(this.walls, other.walls))
+		if (this.boxes != other.boxes && !this.boxes.equals(other.boxes))
 			return false;
 		return true;
 	}
@@ -196,15 +557,14 @@ public class Node {
 	public String toString() {
 		StringBuilder s = new StringBuilder();
 		for (int row = 0; row < MAX_ROW; row++) {
-			if (!this.walls[row][0]) {
-				break;
-			}
 			for (int col = 0; col < MAX_COL; col++) {
-				if (this.boxes[row][col] > 0) {
-					s.append(this.boxes[row][col]);
-				} else if (this.goals[row][col] > 0) {
-					s.append(this.goals[row][col]);
-				} else if (this.walls[row][col]) {
+				int cell = cell(row, col);
+				char box = this.boxLetterAt(row, col);
+				if (box > 0) {
+					s.append(box);
+				} else if (level.isGoal(cell)) {
+					s.append(level.goalAt(cell));
+				} else if (level.isWall(cell)) {
 					s.append("+");
 				} else if (row == this.agentRow && col == this.agentCol) {
 					s.append("0");
@@ -0,0 +1,69 @@
+package searchclient;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+// The search tree of the single-threaded strategies as flat arrays instead of a chain of Node
+// objects: entry i holds the id of its parent entry and the index in Command.EVERY of the action
+// leading to it. Once a node is detached into the arena nothing refers to its ancestors, so
+// they are collected along with their box layers and cached heuristic arrays, at 5 bytes per
+// expanded node. The states along the plan are found again by replaying the actions from the
+// initial state, so the arena does not need to store them.
+//
+// The arena holds every expanded node, so it grows with the search even when the visited
+// states are kept in a fixed-size Bloom filter; only StrategyDFS drops dead entries again.
+public class NodeArena {
+    private static final byte ROOT = -1;
+    // Largest array length the JVM allows.
+    private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+    private int[] parents = new int[1 << 16];
+    private byte[] actions = new byte[1 << 16];
+    private int size;
+
+    // Records n, whose parent link must already have been detached, and returns its id.
+    public int add(Node n) {
+        if (this.size == this.parents.length) {
+            if (this.size == MAX_SIZE) {
+                throw new OutOfMemoryError("Node arena is full");
+            }
+            int capacity = (int) Math.min(this.size * 2L, MAX_SIZE);
+            this.parents = Arrays.copyOf(this.parents, capacity);
+            this.actions = Arrays.copyOf(this.actions, capacity);
+        }
+        this.parents[this.size] = n.parentId;
+        this.actions[this.size] = n.action == null ? ROOT : (byte) n.action.index;
+        return this.size++;
+    }
+
+    // Replaces the parent links from n up to 'leaf', which has id leafId, by arena ids. Nodes
+    // in between, made while following a tunnel, are recorded as well.
+    public void detach(Node n, Node leaf, int leafId) {
+        if (n.parent == leaf) {
+            n.parentId = leafId;
+        } else {
+            this.detach(n.parent, leaf, leafId);
+            n.parentId = this.add(n.parent);
+        }
+        n.parent = null;
+    }
+
+    // The plan leading to the detached node goal, replayed from the initial state.
+    public LinkedList<Node> extractPlan(Node goal, Node initialState) {
+        LinkedList<Command> commands = new LinkedList<Command>();
+        commands.addFirst(goal.action);
+        for (int id = goal.parentId; this.actions[id] != ROOT; id = this.parents[id]) {
+            commands.addFirst(Command.EVERY[this.actions[id]]);
+        }
+        return SearchEngine.replay(initialState, commands);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    // Drops the entries from id size on, which nothing may refer to any more.
+    public void truncate(int size) {
+        this.size = size;
+    }
+}
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 
 import searchclient.Memory;
@@ -12,6 +13,7 @@ import searchclient.Heuristic.*;
 
 public class SearchClient {
     public Node initialState;
+    public DeadlockDetector deadlocks;
 
     public SearchClient(BufferedReader serverMessages) throws Exception {
         // Read lines specifying colors
@@ -23,28 +25,23 @@ public class SearchClient {
 
         boolean agentFound = false;
 
-        int max_col = line.length();
-        int max_row = 0;
-        ArrayList<String> tmpServerMessages = new ArrayList<>();
-        tmpServerMessages.add(line);
-        while(!line.equals("")) {
+        // The level ends with an empty line
+        ArrayList<String> lines = new ArrayList<>();
+        while (!line.equals("")) {
+            lines.add(line);
             line = serverMessages.readLine();
-            tmpServerMessages.add(line);
-            max_row++;
         }
 
-        Node.initNodeStatics(max_row, max_col);
+        Node.setLevel(new Level(lines));
         this.initialState = new Node(null);
 
-        int row = 0;
-
-        for(String tmpLine : tmpServerMessages) {
+        // Walls and goals are read by Level; the agent and boxes make up the initial state.
+        for (int row = 0; row < lines.size(); row++) {
+            String tmpLine = lines.get(row);
             for (int col = 0; col < tmpLine.length(); col++) {
                 char chr = tmpLine.charAt(col);
 
-                if (chr == '+') { // Wall.
-                    this.initialState.walls[row][col] = true;
-                } else if ('0' <= chr && chr <= '9') { // Agent.
+                if ('0' <= chr && chr <= '9') { // Agent.
                     if (agentFound) {
                         System.err.println("Error, not a single agent level");
                         System.exit(1);
@@ -53,29 +50,37 @@ public class SearchClient {
                     this.initialState.agentRow = row;
                     this.initialState.agentCol = col;
                 } else if ('A' <= chr && chr <= 'Z') { // Box.
-                    this.initialState.boxes[row][col] = chr;
-                } else if ('a' <= chr && chr <= 'z') { // Goal.
-                    this.initialState.goals[row][col] = chr;
-                } else if (chr == ' ') {
-                    // Free space.
+                    this.initialState.addBox(row, col, chr);
+                } else if (chr == '+' || ('a' <= chr && chr <= 'z') || chr == ' ') {
+                    // Wall, goal or free space.
                 } else {
                     System.err.println("Error, read invalid level character: " + (int) chr);
                     System.exit(1);
                 }
             }
-            row++;
         }
+        this.initialState.initInitialState();
+        DeadSquares.init(this.initialState);
+        this.deadlocks = new DeadlockDetector(this.initialState);
     }
 
-    public LinkedList<Node> Search(Strategy strategy) throws IOException {
-        System.err.format("Search starting with strategy %s.\n", strategy.toString());
+    public LinkedList<Node> Search(Strategy chosen) throws IOException {
+        System.err.format("Search starting with strategy %s.\n", chosen.toString());
         if(this.initialState.isGoalState()) return this.initialState.extractPlan();
+        if (chosen instanceof SearchEngine) {
+            return ((SearchEngine) chosen).search(this.initialState, this.deadlocks);
+        }
+        FrontierStrategy strategy = (FrontierStrategy) chosen;
         strategy.addToFrontier(this.initialState);
 
+        // Expanded nodes are kept in the strategy's NodeArena, so at most the frontier holds
+        // Node objects.
+        Node[] children = new Node[Command.EVERY.length];
         int iterations = 0;
         while (true) {
             if (iterations == 1000) {
                 System.err.println(strategy.searchStatus());
+                System.err.println(this.deadlocks.status());
                 iterations = 0;
             }
 
@@ -90,18 +95,148 @@ public class SearchClient {
             }*/
 
             strategy.addToExplored(leafNode);
-            for (Node n : leafNode.getExpandedNodes()) { // The list of expanded nodes is shuffled randomly; see Node.java.
-                if (!strategy.isExplored(n) && !strategy.inFrontier(n)) {
+            int count = leafNode.expand(children);
+            for (int i = 0; i < count; i++) { // The children are shuffled; see Node.expand.
+                Node n = children[i];
+                if (!strategy.isVisited(n)) {
                     if (n.isGoalState()) {
-                        return n.extractPlan();
+                        return strategy.extractPlan(n, this.initialState);
+                    }
+                    if (this.deadlocks.isDeadlocked(n)) {
+                        continue;
                     }
                     strategy.addToFrontier(n);
+                } else {
+                    strategy.decreaseKey(n);
                 }
             }
             iterations++;
         }
     }
 
+    // Picks the strategy from the command line. A strategy flag (-bfs, -pbfs, -xbfs, -bidir, -dfs,
+    // -bestfirst, -pushes, -ida, -hda, -multiqueue) can be combined with a heuristic flag (-astar,
+    // -wastar [W] with W = 5 by default, -greedy, -matching [W] with W = 1 by default, i.e. A*) and
+    // -threads N for the parallel strategies. -offheap keeps the visited states of -bfs, -dfs and
+    // -bestfirst off the heap, -bitstate MB replaces them by a Bloom filter of that size.
+    // -tunnels moves the agent and boxes through straight tunnels in one expansion, which can make
+    // plans longer, so the breadth-first strategies that promise shortest plans refuse it. -noshuffle keeps
+    // children in the order of Command.EVERY instead of shuffling them per state.
+    // Without arguments WA*(5) best-first search is used.
+    static Strategy chooseStrategy(String[] args, Node initialState) {
+        String strategy = "-bestfirst";
+        String heuristic = "-wastar";
+        // Weight given after -wastar or -matching; otherwise each uses its own default.
+        int W = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean offHeap = false;
+        long bitstateBytes = 0;
+        boolean tunnels = false;
+        boolean shuffle = true;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+            case "-wastar":
+            case "-matching":
+                heuristic = args[i];
+                if (i + 1 < args.length && args[i + 1].matches("\\d+")) {
+                    W = Integer.parseInt(args[++i]);
+                }
+                break;
+            case "-astar":
+            case "-greedy":
+                heuristic = args[i];
+                break;
+            case "-threads":
+                threads = Integer.parseInt(args[++i]);
+                if (threads < 1) {
+                    System.err.println("Error, -threads needs at least 1 thread.");
+                    System.exit(1);
+                }
+                break;
+            case "-offheap":
+                offHeap = true;
+                break;
+            case "-bitstate":
+                bitstateBytes = Long.parseLong(args[++i]) << 20;
+                break;
+            case "-tunnels":
+                tunnels = true;
+                break;
+            case "-noshuffle":
+                shuffle = false;
+                break;
+            default:
+                strategy = args[i];
+            }
+        }
+
+        if (tunnels && Arrays.asList("-bfs", "-pbfs", "-xbfs", "-bidir").contains(strategy)) {
+            System.err.println("Error, -tunnels can skip the shortest plan and does not work with " + strategy + ".");
+            System.exit(1);
+        }
+        Tunnels.init(tunnels);
+        Node.setShuffle(shuffle);
+        Strategy chosen = createStrategy(strategy, heuristic, W, threads, initialState);
+        if (offHeap) {
+            if (!(chosen instanceof FrontierStrategy)) {
+                System.err.println("Error, -offheap only works with -bfs, -dfs and -bestfirst.");
+                System.exit(1);
+            }
+            ((FrontierStrategy) chosen).useOffHeapVisitedTable();
+        }
+        if (bitstateBytes > 0) {
+            if (!(chosen instanceof FrontierStrategy)) {
+                System.err.println("Error, -bitstate only works with -bfs, -dfs and -bestfirst.");
+                System.exit(1);
+            }
+            ((FrontierStrategy) chosen).useBitstate(bitstateBytes);
+        }
+        return chosen;
+    }
+
+    private static Strategy createStrategy(String strategy, String heuristic, int W, int threads, Node initialState) {
+        switch (strategy) {
+        case "-bfs":
+            return new StrategyBFS();
+        case "-pbfs":
+            return new StrategyParallelBFS(threads);
+        case "-xbfs":
+            return new StrategyExternalBFS();
+        case "-bidir":
+            return new StrategyBidirectional();
+        case "-dfs":
+            return new StrategyDFS();
+        case "-bestfirst":
+            return new StrategyBestFirst(chooseHeuristic(heuristic, W, initialState));
+        case "-pushes":
+            return new StrategyPushLevel(chooseHeuristic(heuristic, W, initialState));
+        case "-ida":
+            return new StrategyIDA(chooseHeuristic(heuristic, W, initialState));
+        case "-hda":
+            return new StrategyHDA(chooseHeuristic(heuristic, W, initialState), threads);
+        case "-multiqueue":
+            return new StrategyMultiQueue(chooseHeuristic(heuristic, W, initialState), threads);
+        default:
+            System.err.println("Error, unknown strategy: " + strategy);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    private static Heuristic chooseHeuristic(String heuristic, int W, Node initialState) {
+        switch (heuristic) {
+        case "-astar":
+            return new AStar(initialState);
+        case "-greedy":
+            return new Greedy(initialState);
+        case "-matching":
+            return new Matching(initialState, W > 0 ? W : 1);
+        default:
+            // You're welcome to test WA* out with different values, but for the report you must at least indicate benchmarks for W = 5.
+            return new WeightedAStar(initialState, W > 0 ? W : 5);
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         BufferedReader serverMessages = new BufferedReader(new InputStreamReader(System.in));
 
@@ -111,16 +246,7 @@ public class SearchClient {
         // Read level and create the initial state of the problem
         SearchClient client = new SearchClient(serverMessages);
 
-        Strategy strategy;
-        // strategy = new StrategyBFS();
-        // Ex 1:
-        // strategy = new StrategyDFS();
-
-        // Ex 3:
-        // strategy = new StrategyBestFirst(new AStar(client.initialState));
-        // You're welcome to test WA* out with different values, but for the report you must at least indicate benchmarks for W = 5.
-         strategy = new StrategyBestFirst(new WeightedAStar(client.initialState, 5));
-        // strategy = new StrategyBestFirst(new Greedy(client.initialState));
+        Strategy strategy = chooseStrategy(args, client.initialState);
 
         LinkedList<Node> solution;
         try {
@@ -132,12 +258,14 @@ public class SearchClient {
 
         if (solution == null) {
             System.err.println(strategy.searchStatus());
+            System.err.println(client.deadlocks.status());
             System.err.println("Unable to solve level.");
             System.exit(0);
         } else {
             System.err.println("\nSummary for " + strategy.toString());
             System.err.println("Found solution of length " + solution.size());
             System.err.println(strategy.searchStatus());
+            System.err.println(client.deadlocks.status());
 
             for (Node n : solution) {
                 String act = n.action.toString();
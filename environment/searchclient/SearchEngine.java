@@ -0,0 +1,91 @@
+package searchclient;
+
+import java.util.LinkedList;
+import java.util.List;
+
+// A strategy that runs its own search loop instead of handing out leaves one at a time
+// to SearchClient.Search, e.g. because the search is spread over several threads.
+public abstract class SearchEngine extends Strategy {
+    // Set once the search should stop, whether a goal was found or the work ran out.
+    protected volatile boolean done;
+    private volatile Throwable failure;
+
+    public abstract LinkedList<Node> search(Node initialState, DeadlockDetector deadlocks);
+
+    // Runs the workers on their own threads and waits for all of them, printing the search
+    // status every second. An error in any worker (e.g. running out of memory) stops the
+    // others and is rethrown on the calling thread.
+    protected void runWorkers(Runnable[] workers) {
+        Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            Runnable worker = workers[i];
+            threads[i] = new Thread(() -> {
+                try {
+                    worker.run();
+                } catch (Throwable t) {
+                    this.failure = t;
+                    this.done = true;
+                }
+            });
+            threads[i].setDaemon(true);
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+
+        try {
+            for (Thread t : threads) {
+                while (t.isAlive()) {
+                    t.join(1000);
+                    if (t.isAlive()) {
+                        System.err.println(this.searchStatus());
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            this.done = true;
+            Thread.currentThread().interrupt();
+        }
+
+        Throwable t = this.failure;
+        if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    // Rebuilds the plan as a chain of nodes by applying the single actions from the initial
+    // state, for searches that only keep compact records of how states were reached.
+    protected static LinkedList<Node> replay(Node initialState, List<Command> commands) {
+        Node n = initialState;
+        for (Command c : commands) {
+            Node next = n.child(c);
+            if (next == null) {
+                throw new IllegalStateException("Plan contains inapplicable action " + c + " in\n" + n);
+            }
+            n = next;
+        }
+        return n.extractPlan();
+    }
+
+    // Like replay, but each command names the child getExpandedNodes generated for it, which
+    // may stand for several actions (see Tunnels).
+    protected static LinkedList<Node> replayExpansions(Node initialState, List<Command> commands) {
+        Node n = initialState;
+        for (Command c : commands) {
+            Node next = null;
+            for (Node child : n.getExpandedNodes()) {
+                if (child.action == c) {
+                    next = child;
+                    break;
+                }
+            }
+            if (next == null) {
+                throw new IllegalStateException("Plan contains inapplicable action " + c + " in\n" + n);
+            }
+            n = next;
+        }
+        return n.extractPlan();
+    }
+}
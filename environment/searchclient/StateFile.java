@@ -0,0 +1,117 @@
+package searchclient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A file of fixed-size binary records, written once by appending and then read through
+// memory-mapped chunks. Used to keep search layers on disk instead of on the heap.
+//
+// The file is opened with DELETE_ON_CLOSE, which on Unix unlinks it right away: the data stays
+// reachable through the open channel and the space is freed however the process ends, also
+// when the server kills the client on a timeout.
+public class StateFile {
+    private static final int CHUNK_BYTES = 1 << 26;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int recordSize;
+    private final int recordsPerChunk;
+    private long count;
+    private MappedByteBuffer writeChunk;
+
+    public StateFile(Path path, int recordSize) {
+        this.path = path;
+        this.recordSize = recordSize;
+        this.recordsPerChunk = Math.max(1, CHUNK_BYTES / recordSize);
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Returns a buffer positioned at the start of a new record; the caller must write exactly
+    // recordSize bytes before the next call.
+    public ByteBuffer append() {
+        int inChunk = (int) (this.count % this.recordsPerChunk);
+        if (inChunk == 0) {
+            this.writeChunk = this.map(this.count / this.recordsPerChunk, FileChannel.MapMode.READ_WRITE);
+        }
+        this.writeChunk.position(inChunk * this.recordSize);
+        this.count++;
+        return this.writeChunk;
+    }
+
+    // Copies one record from src at the given offset.
+    public void append(byte[] src, int offset) {
+        this.append().put(src, offset, this.recordSize);
+    }
+
+    // Trims the file to its records once writing is done.
+    public void finish() {
+        this.writeChunk = null;
+        try {
+            this.channel.truncate(this.count * this.recordSize);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public long count() {
+        return this.count;
+    }
+
+    public long bytes() {
+        return this.count * this.recordSize;
+    }
+
+    public Reader reader() {
+        return new Reader();
+    }
+
+    public void delete() {
+        try {
+            this.channel.close();
+            Files.deleteIfExists(this.path);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private MappedByteBuffer map(long chunk, FileChannel.MapMode mode) {
+        long start = chunk * this.recordsPerChunk * this.recordSize;
+        long size = (long) this.recordsPerChunk * this.recordSize;
+        if (mode == FileChannel.MapMode.READ_ONLY) {
+            size = Math.min(size, this.bytes() - start);
+        }
+        try {
+            return this.channel.map(mode, start, size);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Random or sequential access to the records, keeping one chunk mapped at a time.
+    public class Reader {
+        private MappedByteBuffer chunk;
+        private long chunkIndex = -1;
+
+        // Returns a buffer positioned at the start of the record with the given index.
+        public ByteBuffer at(long index) {
+            long c = index / recordsPerChunk;
+            if (c != this.chunkIndex) {
+                this.chunk = map(c, FileChannel.MapMode.READ_ONLY);
+                this.chunkIndex = c;
+            }
+            this.chunk.position((int) (index % recordsPerChunk) * recordSize);
+            return this.chunk;
+        }
+    }
+}
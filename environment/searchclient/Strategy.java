@@ -1,74 +1,288 @@
 package searchclient;
 
-import java.util.ArrayDeque;
-import java.util.HashSet;
-import java.util.PriorityQueue;
+import java.util.LinkedList;
 
 import searchclient.Memory;
-import searchclient.NotImplementedException;
 
+// Common base of all strategies: timing and the status line. How the search itself is run is
+// left to the subclasses: FrontierStrategy hands out leaves to SearchClient.Search, while a
+// SearchEngine runs its own loop.
 public abstract class Strategy {
-    private HashSet<Node> explored;
     private final long startTime;
 
     public Strategy() {
-        this.explored = new HashSet<Node>();
         this.startTime = System.currentTimeMillis();
     }
 
-    public void addToExplored(Node n) {
-        this.explored.add(n);
-    }
-
-    public boolean isExplored(Node n) {
-        return this.explored.contains(n);
-    }
-
-    public int countExplored() {
-        return this.explored.size();
+    public String searchStatus() {
+        String status = String.format("#Explored: %4d, #Frontier: %3d, Time: %3.2f s \t%s", this.countExplored(), this.countFrontier(), this.timeSpent(), Memory.stringRep());
+        Heuristic h = this.heuristic();
+        return h == null ? status : status + ", " + h.cacheStatus();
     }
 
-    public String searchStatus() {
-        return String.format("#Explored: %4d, #Frontier: %3d, Time: %3.2f s \t%s", this.countExplored(), this.countFrontier(), this.timeSpent(), Memory.stringRep());
+    // The heuristic guiding the search, or null for the uninformed strategies.
+    protected Heuristic heuristic() {
+        return null;
     }
 
     public float timeSpent() {
         return (System.currentTimeMillis() - this.startTime) / 1000f;
     }
 
-    public abstract Node getAndRemoveLeaf();
+    public abstract int countExplored();
 
-    public abstract void addToFrontier(Node n);
+    public abstract int countFrontier();
 
-    public abstract boolean inFrontier(Node n);
+    public abstract String toString();
 
-    public abstract int countFrontier();
+    // A strategy that keeps a frontier of leaves for SearchClient.Search to expand one at a time.
+    public abstract static class FrontierStrategy extends Strategy {
+        // Holds both explored and frontier states, keyed on Node.zobristHash().
+        private VisitedTable visited;
+        // Replaces the visited table in bitstate mode; frontier and explored states are then no
+        // longer told apart and costs are not kept, so frontier entries are never found stale.
+        private BloomFilter bitstate;
+        private int bitstateExplored;
+        // The expanded nodes; see NodeArena.
+        private final NodeArena arena;
+        // The leaf being expanded and its arena id. Its children are detached as they are queued.
+        private Node leaf;
+        private int leafId;
+
+        public FrontierStrategy() {
+            super();
+            this.visited = new VisitedTable();
+            this.arena = new NodeArena();
+        }
 
-    public abstract boolean frontierIsEmpty();
+        // Moves the visited states to an off-heap table, so the garbage collector does not have to
+        // deal with it however large the search grows. Meant to be called before the search starts.
+        public void useOffHeapVisitedTable() {
+            if (this.visited.size() > 0) {
+                throw new IllegalStateException("Search already started");
+            }
+            this.visited = new VisitedTable(1 << 16, true);
+        }
 
-    public abstract String toString();
+        // Swaps the exact visited table for a Bloom filter of the given size, trading a small
+        // chance of pruning unvisited states for a fixed memory use. Call before the search starts.
+        public void useBitstate(long bytes) {
+            if (this.visited.size() > 0) {
+                throw new IllegalStateException("Search already started");
+            }
+            this.bitstate = new BloomFilter(bytes);
+            this.visited = new VisitedTable(16, false);
+        }
+
+        public void addToExplored(Node n) {
+            this.leaf = n;
+            this.leafId = this.arena.add(n);
+            if (this.bitstate != null) {
+                this.bitstateExplored++;
+                return;
+            }
+            this.visited.close(n.zobristHash(), n.g());
+        }
+
+        // Replaces the parent link of a child of the current leaf by an arena id. Subclasses call
+        // this once the child is queued, as the heuristic reuses the values cached in its parent.
+        protected void detach(Node n) {
+            if (n.parent != null) {
+                this.arena.detach(n, this.leaf, this.leafId);
+            }
+        }
+
+        protected int arenaSize() {
+            return this.arena.size();
+        }
+
+        protected void truncateArena(int size) {
+            this.arena.truncate(size);
+        }
+
+        // The plan leading to goal, a child of the current leaf.
+        public LinkedList<Node> extractPlan(Node goal, Node initialState) {
+            this.detach(goal);
+            return this.arena.extractPlan(goal, initialState);
+        }
+
+        // Subclasses call this when a node enters their frontier.
+        protected void markInFrontier(Node n) {
+            if (this.bitstate != null) {
+                this.bitstate.add(n.zobristHash());
+                return;
+            }
+            this.visited.putOpen(n.zobristHash(), n.g());
+        }
+
+        // Explored or in the frontier, answered with a single lookup.
+        public boolean isVisited(Node n) {
+            if (this.bitstate != null) {
+                return this.bitstate.mightContain(n.zobristHash());
+            }
+            return this.visited.find(n.zobristHash()) >= 0;
+        }
+
+        // Called for a child whose state was already visited. Strategies that can
+        // lower the cost of a state still in their frontier queue it again.
+        public void decreaseKey(Node n) {
+        }
+
+        // True if the state has since been explored or reached with a lower g than n.
+        protected boolean isStale(Node n) {
+            if (this.bitstate != null) {
+                return false;
+            }
+            int slot = this.visited.find(n.zobristHash());
+            return this.visited.isClosed(slot) || this.visited.bestG(slot) < n.g();
+        }
+
+        // True if the state is in the frontier with a higher g than n.
+        protected boolean improvesFrontier(Node n) {
+            if (this.bitstate != null) {
+                return false;
+            }
+            int slot = this.visited.find(n.zobristHash());
+            return slot >= 0 && !this.visited.isClosed(slot) && n.g() < this.visited.bestG(slot);
+        }
+
+        @Override
+        public int countExplored() {
+            return this.bitstate != null ? this.bitstateExplored : this.visited.closedCount();
+        }
+
+        @Override
+        public String searchStatus() {
+            String status = super.searchStatus();
+            if (this.bitstate != null) {
+                status += ", " + this.bitstate.status();
+            } else if (this.visited.isOffHeap()) {
+                status += String.format(", Off-heap visited table: %.1f MB, load %.2f", this.visited.bytes() / 1e6, this.visited.loadFactor());
+            }
+            return status;
+        }
+
+        public abstract Node getAndRemoveLeaf();
 
-    public static class StrategyBFS extends Strategy {
-        protected ArrayDeque<Node> frontier;
-        protected HashSet<Node> frontierSet;
+        public abstract void addToFrontier(Node n);
+
+        public abstract boolean frontierIsEmpty();
+    }
+
+    // The frontier is kept as flat columns rather than Node objects: for each queued state the
+    // agent's cell, the box layer (interned, so shared with other states), g, and the arena id
+    // of the parent and the action leading to it, 17 bytes against a Node of some 60. Each leaf
+    // is turned back into a node when it is taken out, the way BucketQueue reads spilled nodes.
+    public static class StrategyBFS extends FrontierStrategy {
+        private static final byte ROOT = -1;
+
+        // Ring buffers indexed alike, holding the queue from head to head + count.
+        private int[] agents;
+        private BoxLayer[] boxes;
+        private int[] gs;
+        private int[] parents;
+        private byte[] actions;
+        // For depth-first search only: the arena size when each entry was queued.
+        private final boolean depthFirst;
+        private int[] arenaSizes;
+        private int head;
+        private int count;
 
         public StrategyBFS() {
+            this(false);
+        }
+
+        protected StrategyBFS(boolean depthFirst) {
             super();
-            frontier = new ArrayDeque<Node>();
-            frontierSet = new HashSet<Node>();
+            this.depthFirst = depthFirst;
+            this.allocate(1 << 10);
+        }
+
+        private void allocate(int capacity) {
+            this.agents = new int[capacity];
+            this.boxes = new BoxLayer[capacity];
+            this.gs = new int[capacity];
+            this.parents = new int[capacity];
+            this.actions = new byte[capacity];
+            if (this.depthFirst) {
+                this.arenaSizes = new int[capacity];
+            }
         }
 
         @Override
         public Node getAndRemoveLeaf() {
-            Node n = frontier.pollFirst();
-            frontierSet.remove(n);
+            Node n = this.take(this.head);
+            this.head = (this.head + 1) & (this.agents.length - 1);
+            this.count--;
+            return n;
+        }
+
+        // Takes the leaf from the back of the queue instead, for depth-first search. Everything
+        // added to the arena since it was queued belongs to subtrees that have been searched in
+        // full, so the arena is cut back to its size at that time and stays in proportion to the
+        // stack rather than to the number of expanded nodes.
+        protected Node getAndRemoveLast() {
+            this.count--;
+            int i = (this.head + this.count) & (this.agents.length - 1);
+            this.truncateArena(this.arenaSizes[i]);
+            return this.take(i);
+        }
+
+        private Node take(int i) {
+            Node n = Node.state(this.agents[i], this.boxes[i], this.gs[i]);
+            n.parentId = this.parents[i];
+            n.action = this.actions[i] == ROOT ? null : Command.EVERY[this.actions[i]];
+            this.boxes[i] = null;
             return n;
         }
 
         @Override
         public void addToFrontier(Node n) {
-            frontier.addLast(n);
-            frontierSet.add(n);
+            this.detach(n);
+            this.markInFrontier(n);
+            if (this.count == this.agents.length) {
+                this.grow();
+            }
+            int i = (this.head + this.count) & (this.agents.length - 1);
+            this.agents[i] = Node.cell(n.agentRow, n.agentCol);
+            this.boxes[i] = n.boxes;
+            this.gs[i] = n.g();
+            this.parents[i] = n.parentId;
+            this.actions[i] = n.action == null ? ROOT : (byte) n.action.index;
+            if (this.depthFirst) {
+                this.arenaSizes[i] = this.arenaSize();
+            }
+            this.count++;
+        }
+
+        // Doubles the ring buffers of a full queue, moving the head to 0.
+        private void grow() {
+            if (this.agents.length == 1 << 30) {
+                throw new OutOfMemoryError("Frontier is full");
+            }
+            int[] arenaSizes = this.arenaSizes;
+            int[] agents = this.agents;
+            BoxLayer[] boxes = this.boxes;
+            int[] gs = this.gs;
+            int[] parents = this.parents;
+            byte[] actions = this.actions;
+            this.allocate(agents.length * 2);
+            int tail = agents.length - this.head;
+            System.arraycopy(agents, this.head, this.agents, 0, tail);
+            System.arraycopy(agents, 0, this.agents, tail, this.head);
+            System.arraycopy(boxes, this.head, this.boxes, 0, tail);
+            System.arraycopy(boxes, 0, this.boxes, tail, this.head);
+            System.arraycopy(gs, this.head, this.gs, 0, tail);
+            System.arraycopy(gs, 0, this.gs, tail, this.head);
+            System.arraycopy(parents, this.head, this.parents, 0, tail);
+            System.arraycopy(parents, 0, this.parents, tail, this.head);
+            System.arraycopy(actions, this.head, this.actions, 0, tail);
+            System.arraycopy(actions, 0, this.actions, tail, this.head);
+            if (this.depthFirst) {
+                System.arraycopy(arenaSizes, this.head, this.arenaSizes, 0, tail);
+                System.arraycopy(arenaSizes, 0, this.arenaSizes, tail, this.head);
+            }
+            this.head = 0;
         }
 
         @Override
@@ -78,38 +292,23 @@ public abstract class Strategy {
 
         @Override
         public int countFrontier() {
-            return frontier.size();
+            return this.count;
         }
 
         @Override
         public boolean frontierIsEmpty() {
-            return frontier.isEmpty();
-        }
-
-        @Override
-        public boolean inFrontier(Node n) {
-            return frontierSet.contains(n);
+            return this.count == 0;
         }
     }
 
     public static class StrategyDFS extends StrategyBFS {
         public StrategyDFS() {
-            super();
-            frontier = new ArrayDeque<Node>();
-            frontierSet = new HashSet<Node>();
+            super(true);
         }
 
         @Override
         public Node getAndRemoveLeaf() {
-            Node n = frontier.pop();
-            frontierSet.remove(n);
-            return n;
-        }
-
-        @Override
-        public void addToFrontier(Node n) {
-            frontier.push(n);
-            frontierSet.add(n);
+            return this.getAndRemoveLast();
         }
 
         @Override
@@ -118,50 +317,102 @@ public abstract class Strategy {
         }
     }
 
-    // Ex 3: Best-first Search uses a priority queue (Java contains no implementation of a Heap data structure)
-    public static class StrategyBestFirst extends Strategy {
-        protected PriorityQueue<Node> frontier;
-        protected HashSet<Node> frontierSet;
+    // Ex 3: Best-first Search uses a bucket queue, since f-values are small non-negative integers.
+    // Ties on f are broken on the lowest h or the highest g.
+    // A cheaper path to a state already in the frontier pushes the new node,
+    // and the superseded entry is skipped when it is popped.
+    // Once the heap is nearly full, the open list spills its highest f rows to disk; see
+    // BucketQueue.spill. The heap is checked every SPILL_CHECK leaves, when every queued node
+    // has been detached into the arena.
+    public static class StrategyBestFirst extends FrontierStrategy {
+        public static enum TieBreak {
+            LowestH, HighestG
+        };
+
+        private static final int SPILL_CHECK = 1 << 12;
+        private static final double SPILL_AT = 0.8;
+
+        protected BucketQueue frontier;
         private Heuristic heuristic;
+        private TieBreak tieBreak;
+        private int liveCount;
+        private long pushed;
+        private int leavesSinceCheck;
 
         public StrategyBestFirst(Heuristic h) {
+            this(h, TieBreak.HighestG);
+        }
+
+        public StrategyBestFirst(Heuristic h, TieBreak tieBreak) {
             super();
             this.heuristic = h;
-            frontier = new PriorityQueue<Node>(h);
-            frontierSet = new HashSet<Node>();
+            this.tieBreak = tieBreak;
+            frontier = new BucketQueue(tieBreak == TieBreak.HighestG);
         }
 
         @Override
         public Node getAndRemoveLeaf() {
-            Node n = frontier.poll();
-            frontierSet.remove(n);
+            if (++this.leavesSinceCheck == SPILL_CHECK) {
+                this.leavesSinceCheck = 0;
+                if (Memory.used() > SPILL_AT * Memory.max()) {
+                    frontier.spill();
+                }
+            }
+            Node n = frontier.pop();
+            while (this.isStale(n)) {
+                n = frontier.pop();
+            }
+            liveCount--;
             return n;
         }
 
         @Override
         public void addToFrontier(Node n) {
-            frontier.offer(n);
-            frontierSet.add(n);
+            this.push(n);
+            this.markInFrontier(n);
+            this.detach(n);
+            liveCount++;
         }
 
         @Override
-        public String toString() {
-            return "Best-first Search (PriorityQueue) using " + this.heuristic.toString();
+        public void decreaseKey(Node n) {
+            if (this.improvesFrontier(n)) {
+                this.push(n);
+                this.markInFrontier(n);
+                this.detach(n);
+            }
+        }
+
+        private void push(Node n) {
+            int tie = this.tieBreak == TieBreak.HighestG ? n.g() : this.heuristic.h(n);
+            frontier.push(n, this.heuristic.f(n), tie);
+            pushed++;
         }
 
         @Override
-        public int countFrontier() {
-            return frontier.size();
+        public String searchStatus() {
+            return String.format("%s, #Evaluated: %d (%.2f per queued node), Spilled to disk: %d", super.searchStatus(),
+                    this.heuristic.evaluations(), (double) this.heuristic.evaluations() / Math.max(1, pushed), frontier.spilledCount());
         }
 
         @Override
-        public boolean frontierIsEmpty() {
-            return frontier.isEmpty();
+        protected Heuristic heuristic() {
+            return this.heuristic;
+        }
+
+        @Override
+        public String toString() {
+            return "Best-first Search (Bucket queue) using " + this.heuristic.toString();
         }
 
         @Override
-        public boolean inFrontier(Node n) {
-            return frontierSet.contains(n);
+        public int countFrontier() {
+            return liveCount;
+        }
+
+        @Override
+        public boolean frontierIsEmpty() {
+            return liveCount == 0;
         }
     }
 }
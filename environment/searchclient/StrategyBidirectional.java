@@ -0,0 +1,167 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+
+// Bidirectional breadth-first search. Every action can be undone by another (see
+// Command.inverse), so the states that can reach the goal are found by expanding forward from
+// the goal configurations: all boxes on their goals and the agent on any free cell. The two
+// searches take turns expanding a whole layer, the side with the smaller layer first, and meet
+// when a generated state is already known to the other side. Finishing the layer in which they
+// first meet and taking the shortest connection gives an optimal plan, made of the forward half
+// followed by the inverted backward half.
+//
+// The backward side expands with the same dead-square pruning and tunnel macros as the forward
+// side, so it may run dry without having found every state that reaches the goal. From then on
+// only the forward side expands, until it meets a backward state or reaches a goal itself.
+//
+// The goal configuration is only known when every letter has as many boxes as goals; otherwise
+// the backward side stays empty and this is a plain breadth-first search.
+//
+// Each side records its states in a VisitedTable with their g, and keeps the nodes of every
+// layer it expanded. Without tunnels, which this search refuses, g is the depth of the layer a
+// node is in, so a node met by the other side is found again by scanning that one layer.
+public class StrategyBidirectional extends SearchEngine {
+    private final VisitedTable forward = new VisitedTable();
+    private final VisitedTable backward = new VisitedTable();
+    // Every layer of each side; the last one is its frontier.
+    private final ArrayList<ArrayList<Node>> forwardLayers = new ArrayList<ArrayList<Node>>();
+    private final ArrayList<ArrayList<Node>> backwardLayers = new ArrayList<ArrayList<Node>>();
+    private long explored;
+    private final Node[] children = new Node[Command.EVERY.length];
+
+    // Best connection found so far, as the forward and backward node of the shared state.
+    private Node meetForward, meetBackward;
+    private int meetLength = Integer.MAX_VALUE;
+
+    @Override
+    public LinkedList<Node> search(Node initialState, DeadlockDetector deadlocks) {
+        ArrayList<Node> start = new ArrayList<Node>();
+        this.forward.putOpen(initialState.zobristHash(), initialState.g());
+        start.add(initialState);
+        this.forwardLayers.add(start);
+        ArrayList<Node> goals = new ArrayList<Node>();
+        if (hasSingleGoalConfiguration(initialState)) {
+            for (int id = 0; id < Node.level.freeCount(); id++) {
+                int cell = Node.level.freeCell(id);
+                if (!Node.level.isGoal(cell)) {
+                    Node goal = Node.goalState(cell / Node.MAX_COL, cell % Node.MAX_COL);
+                    this.backward.putOpen(goal.zobristHash(), goal.g());
+                    goals.add(goal);
+                }
+            }
+        } else {
+            System.err.println("Boxes and goals do not pair up per letter, searching forward only.");
+        }
+        this.backwardLayers.add(goals);
+
+        while (!last(this.forwardLayers).isEmpty() && this.meetForward == null) {
+            ArrayList<Node> forwardLayer = last(this.forwardLayers);
+            ArrayList<Node> backwardLayer = last(this.backwardLayers);
+            if (!backwardLayer.isEmpty() && backwardLayer.size() < forwardLayer.size()) {
+                this.backwardLayers.add(this.expandLayer(backwardLayer, this.backward, this.forward, this.forwardLayers, null));
+            } else {
+                this.forwardLayers.add(this.expandLayer(forwardLayer, this.forward, this.backward, this.backwardLayers, deadlocks));
+            }
+            System.err.println(this.searchStatus());
+        }
+        if (this.meetForward == null) {
+            return null;
+        }
+
+        ArrayList<Command> plan = new ArrayList<Command>();
+        for (Node n : this.meetForward.extractPlan()) {
+            plan.add(n.action);
+        }
+        for (Node n = this.meetBackward; n != null && n.parent != null; n = n.parent) {
+            plan.add(n.action.inverse());
+        }
+        return replay(initialState, plan);
+    }
+
+    // Expands a layer of one side and returns the next one, recording every connection to the
+    // other side. Deadlocks are only pruned going forward; every backward state reaches the goal.
+    private ArrayList<Node> expandLayer(ArrayList<Node> layer, VisitedTable own, VisitedTable other,
+            ArrayList<ArrayList<Node>> otherLayers, DeadlockDetector deadlocks) {
+        ArrayList<Node> next = new ArrayList<Node>();
+        for (Node leaf : layer) {
+            this.explored++;
+            int count = leaf.expand(this.children);
+            for (int i = 0; i < count; i++) {
+                Node n = this.children[i];
+                long key = n.zobristHash();
+                if (own.find(key) >= 0) {
+                    continue;
+                }
+                int slot = other.find(key);
+                if (slot >= 0 || (own == this.forward && n.isGoalState())) {
+                    // Without a backward side a goal is met directly, with nothing left to append.
+                    int length = n.g() + (slot < 0 ? 0 : other.bestG(slot));
+                    if (length < this.meetLength) {
+                        Node met = slot < 0 ? null : find(otherLayers.get(other.bestG(slot)), key);
+                        this.meetLength = length;
+                        this.meetForward = own == this.forward ? n : met;
+                        this.meetBackward = own == this.forward ? met : n;
+                    }
+                    continue;
+                }
+                if (deadlocks != null && deadlocks.isDeadlocked(n)) {
+                    continue;
+                }
+                own.putOpen(key, n.g());
+                next.add(n);
+            }
+        }
+        return next;
+    }
+
+    private static Node find(ArrayList<Node> layer, long key) {
+        for (Node n : layer) {
+            if (n.zobristHash() == key) {
+                return n;
+            }
+        }
+        throw new IllegalStateException("State not in its layer");
+    }
+
+    private static ArrayList<Node> last(ArrayList<ArrayList<Node>> layers) {
+        return layers.get(layers.size() - 1);
+    }
+
+    private static boolean hasSingleGoalConfiguration(Node initialState) {
+        int[] balance = new int[26];
+        for (char letter : initialState.boxes.letters) {
+            balance[letter - 'A']++;
+        }
+        for (char goal : Node.level.goalLetters()) {
+            balance[goal - 'a'] -= Node.level.goalCells(goal).length;
+        }
+        for (int b : balance) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int countExplored() {
+        return (int) Math.min(Integer.MAX_VALUE, this.explored);
+    }
+
+    @Override
+    public int countFrontier() {
+        return last(this.forwardLayers).size() + last(this.backwardLayers).size();
+    }
+
+    @Override
+    public String searchStatus() {
+        return String.format("%s, Forward depth: %d, Backward depth: %d", super.searchStatus(),
+                this.forwardLayers.size() - 1, this.backwardLayers.size() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "Bidirectional breadth-first search";
+    }
+}
@@ -0,0 +1,324 @@
+package searchclient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+
+// Breadth-first search with its layers on disk. Each layer is a StateFile of records
+// (key, parent index, command index, state) sorted on the Zobrist key. Children of a layer are
+// collected in a heap batch that is sorted and written as a run when full; at the end of the
+// layer the runs are merged, dropping duplicates and every state already in the previous two
+// layers, which is enough since each action can be undone by another. When a box starts on a
+// dead square that does not hold, nor with tunnel macros, whose children may skip layers; in
+// those cases all earlier layers are checked instead.
+//
+// Only the batch lives on the heap, so the search is limited by disk space and pays for it in
+// sequential I/O. The plan is recovered by following the parent indices back through the layers.
+public class StrategyExternalBFS extends SearchEngine {
+    // Heap spent on the batch of generated children.
+    private static final long BATCH_BYTES = 1 << 26;
+    // Offsets within a record.
+    private static final int KEY = 0, PARENT = 8, ACTION = 12, STATE = 13;
+
+    private int boxCount;
+    private int recordSize;
+    private Path directory;
+    private int filesCreated;
+    private final ArrayList<StateFile> layers = new ArrayList<StateFile>();
+
+    // Batch of generated children, in generation order.
+    private long[] batchKeys;
+    private int[] batchOrder;
+    private byte[] batchRecords;
+    private ByteBuffer batchBuffer;
+    private int batchSize;
+    private final ArrayList<StateFile> runs = new ArrayList<StateFile>();
+
+    private long explored;
+    private final Node[] children = new Node[Command.EVERY.length];
+    private long frontier;
+    private long diskBytes;
+
+    @Override
+    public LinkedList<Node> search(Node initialState, DeadlockDetector deadlocks) {
+        if (Node.MAX_ROW * Node.MAX_COL > Character.MAX_VALUE) {
+            throw new IllegalStateException("Level too large for external search records");
+        }
+        this.boxCount = initialState.boxes.size();
+        this.recordSize = STATE + Node.stateBytes(this.boxCount);
+        int batchCapacity = (int) Math.min(BATCH_BYTES / this.recordSize, Runtime.getRuntime().maxMemory() / 8 / this.recordSize);
+        this.batchKeys = new long[batchCapacity];
+        this.batchOrder = new int[batchCapacity];
+        this.batchRecords = new byte[batchCapacity * this.recordSize];
+        this.batchBuffer = ByteBuffer.wrap(this.batchRecords);
+
+        boolean reversible = !Tunnels.enabled();
+        for (int i = 0; i < this.boxCount; i++) {
+            int cell = initialState.boxes.cells[i];
+            reversible &= !DeadSquares.isDead(initialState.boxes.letters[i], cell / Node.MAX_COL, cell % Node.MAX_COL);
+        }
+
+        try {
+            this.directory = Files.createTempDirectory("searchclient");
+            // The files inside are already unlinked (see StateFile); this covers the directory.
+            this.directory.toFile().deleteOnExit();
+            StateFile root = this.newFile();
+            writeRecord(root.append(), initialState.zobristHash(), -1, 0, initialState);
+            root.finish();
+            this.layers.add(root);
+            this.diskBytes = root.bytes();
+
+            while (this.layers.get(this.layers.size() - 1).count() > 0) {
+                int depth = this.layers.size() - 1;
+                LinkedList<Command> plan = this.expandLayer(depth, deadlocks);
+                if (plan != null) {
+                    return replayExpansions(initialState, plan);
+                }
+                this.layers.add(this.mergeRuns(reversible ? Math.max(0, depth - 1) : 0));
+                System.err.println(this.searchStatus());
+            }
+            return null;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            this.deleteFiles();
+        }
+    }
+
+    // Expands every state of the layer into the batch; returns the plan if a goal is generated.
+    private LinkedList<Command> expandLayer(int depth, DeadlockDetector deadlocks) {
+        StateFile layer = this.layers.get(depth);
+        StateFile.Reader reader = layer.reader();
+        this.frontier = layer.count();
+        for (long i = 0; i < layer.count(); i++) {
+            ByteBuffer record = reader.at(i);
+            record.position(record.position() + STATE);
+            Node leaf = Node.readState(record, this.boxCount, depth);
+            this.explored++;
+            this.frontier--;
+            int count = leaf.expand(this.children);
+            for (int j = 0; j < count; j++) {
+                Node n = this.children[j];
+                if (n.isGoalState()) {
+                    return this.extractPlan(depth, i, n.action);
+                }
+                if (deadlocks.isDeadlocked(n)) {
+                    continue;
+                }
+                if (this.batchSize == this.batchKeys.length) {
+                    this.flushBatch();
+                }
+                this.batchBuffer.position(this.batchSize * this.recordSize);
+                writeRecord(this.batchBuffer, n.zobristHash(), (int) i, n.action.index, n);
+                this.batchKeys[this.batchSize] = n.zobristHash();
+                this.batchOrder[this.batchSize] = this.batchSize;
+                this.batchSize++;
+            }
+        }
+        return null;
+    }
+
+    private static void writeRecord(ByteBuffer buf, long key, int parent, int action, Node n) {
+        buf.putLong(key);
+        buf.putInt(parent);
+        buf.put((byte) action);
+        n.writeState(buf);
+    }
+
+    // Sorts the batch on key and writes it as a run, without duplicates.
+    private void flushBatch() {
+        if (this.batchSize == 0) {
+            return;
+        }
+        sort(this.batchKeys, this.batchOrder, 0, this.batchSize - 1);
+        StateFile run = this.newFile();
+        for (int i = 0; i < this.batchSize; i++) {
+            if (i == 0 || this.batchKeys[i] != this.batchKeys[i - 1]) {
+                run.append(this.batchRecords, this.batchOrder[i] * this.recordSize);
+            }
+        }
+        run.finish();
+        this.runs.add(run);
+        this.diskBytes += run.bytes();
+        this.batchSize = 0;
+    }
+
+    // Merges the runs into the next layer, skipping states that are in layers from 'oldest' on.
+    private StateFile mergeRuns(int oldest) {
+        this.flushBatch();
+        PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>((a, b) -> Long.compare(a.key, b.key));
+        for (StateFile run : this.runs) {
+            Cursor c = new Cursor(run);
+            if (c.advance()) {
+                queue.add(c);
+            }
+        }
+        ArrayList<Cursor> previous = new ArrayList<Cursor>();
+        for (int d = oldest; d < this.layers.size(); d++) {
+            Cursor c = new Cursor(this.layers.get(d));
+            if (c.advance()) {
+                previous.add(c);
+            }
+        }
+
+        StateFile next = this.newFile();
+        boolean first = true;
+        long last = 0;
+        while (!queue.isEmpty()) {
+            Cursor c = queue.poll();
+            long key = c.key;
+            if (first || key != last) {
+                first = false;
+                last = key;
+                if (!contains(previous, key)) {
+                    next.append().put(c.record());
+                }
+            }
+            if (c.advance()) {
+                queue.add(c);
+            }
+        }
+        next.finish();
+        this.diskBytes += next.bytes();
+
+        for (StateFile run : this.runs) {
+            this.diskBytes -= run.bytes();
+            run.delete();
+        }
+        this.runs.clear();
+        return next;
+    }
+
+    // Advances the sorted cursors up to key and tells whether any of them holds it.
+    private static boolean contains(ArrayList<Cursor> cursors, long key) {
+        boolean found = false;
+        for (Cursor c : cursors) {
+            while (!c.exhausted && c.key < key) {
+                c.advance();
+            }
+            found |= !c.exhausted && c.key == key;
+        }
+        return found;
+    }
+
+    // Sequential reader over the keys of a sorted file.
+    private class Cursor {
+        private final StateFile file;
+        private final StateFile.Reader reader;
+        private long index = -1;
+        long key;
+        boolean exhausted;
+
+        Cursor(StateFile file) {
+            this.file = file;
+            this.reader = file.reader();
+        }
+
+        boolean advance() {
+            if (++this.index >= this.file.count()) {
+                this.exhausted = true;
+                return false;
+            }
+            this.key = this.reader.at(this.index).getLong();
+            return true;
+        }
+
+        // The current record, as a buffer limited to it.
+        ByteBuffer record() {
+            ByteBuffer buf = this.reader.at(this.index);
+            return buf.slice(buf.position(), recordSize);
+        }
+    }
+
+    private LinkedList<Command> extractPlan(int depth, long index, Command last) {
+        LinkedList<Command> plan = new LinkedList<Command>();
+        plan.addFirst(last);
+        for (int d = depth; d > 0; d--) {
+            ByteBuffer record = this.layers.get(d).reader().at(index);
+            int start = record.position();
+            index = record.getInt(start + PARENT);
+            plan.addFirst(Command.EVERY[record.get(start + ACTION)]);
+        }
+        return plan;
+    }
+
+    private StateFile newFile() {
+        return new StateFile(this.directory.resolve("states" + this.filesCreated++ + ".bin"), this.recordSize);
+    }
+
+    private void deleteFiles() {
+        for (StateFile f : this.layers) {
+            f.delete();
+        }
+        for (StateFile f : this.runs) {
+            f.delete();
+        }
+        try {
+            if (this.directory != null) {
+                Files.deleteIfExists(this.directory);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    // Quicksort of keys[lo..hi], permuting order alongside.
+    private static void sort(long[] keys, int[] order, int lo, int hi) {
+        while (lo < hi) {
+            long pivot = keys[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long k = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = k;
+                    int o = order[i];
+                    order[i] = order[j];
+                    order[j] = o;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse into the smaller half to bound the stack depth.
+            if (j - lo < hi - i) {
+                sort(keys, order, lo, j);
+                lo = i;
+            } else {
+                sort(keys, order, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    @Override
+    public int countExplored() {
+        return (int) Math.min(Integer.MAX_VALUE, this.explored);
+    }
+
+    @Override
+    public int countFrontier() {
+        return (int) Math.min(Integer.MAX_VALUE, this.frontier);
+    }
+
+    @Override
+    public String searchStatus() {
+        return String.format("%s, Depth: %d, On disk: %.1f MB", super.searchStatus(), Math.max(0, this.layers.size() - 1),
+                this.diskBytes / 1e6);
+    }
+
+    @Override
+    public String toString() {
+        return "External-memory breadth-first search";
+    }
+}
@@ -0,0 +1,194 @@
+package searchclient;
+
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Hash-distributed best-first search (HDA*). Every state has an owner thread chosen by its
+// Zobrist key; only the owner keeps it in its open list and visited table. Generated children
+// are sent to their owner through a lock-free MpscQueue, so workers never share a data
+// structure other than those inboxes.
+//
+// The workers expand in f order only locally, so the first goal generated need not be the
+// cheapest. It is kept as the incumbent, and the search goes on with every node whose f is
+// below the f a goal at the incumbent's cost would have (its g for A* and WA*, 0 for greedy).
+// A state reached again more cheaply is reopened even if it was closed.
+//
+// Termination: 'activity' counts busy workers plus nodes sent but not yet received. A worker
+// that has no open node below the bound and an empty inbox stops counting itself as busy, and
+// counts itself again before handling a newly received node. When it reaches zero no work is
+// left anywhere.
+public class StrategyHDA extends SearchEngine {
+    private final Heuristic heuristic;
+    private final Worker[] workers;
+    private final AtomicLong activity = new AtomicLong();
+    private final AtomicReference<Node> solution = new AtomicReference<Node>();
+    // Nodes with at least this f cannot lead to a cheaper plan than the incumbent.
+    private final AtomicInteger bound = new AtomicInteger(Integer.MAX_VALUE);
+
+    public StrategyHDA(Heuristic h, int threads) {
+        super();
+        this.heuristic = h;
+        this.workers = new Worker[threads];
+    }
+
+    @Override
+    public LinkedList<Node> search(Node initialState, DeadlockDetector deadlocks) {
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Worker(new DeadlockDetector(deadlocks));
+        }
+        this.activity.set(this.workers.length + 1);
+        this.workers[this.owner(initialState)].inbox.offer(initialState);
+        this.runWorkers(this.workers);
+
+        Node goal = this.solution.get();
+        return goal == null ? null : goal.extractPlan();
+    }
+
+    private int owner(Node n) {
+        long key = n.zobristHash();
+        key ^= key >>> 29;
+        key *= 0xbf58476d1ce4e5b9L;
+        return (int) ((key >>> 32) % this.workers.length);
+    }
+
+    private class Worker implements Runnable {
+        final MpscQueue<Node> inbox = new MpscQueue<Node>();
+        final BucketQueue open = new BucketQueue(true);
+        final VisitedTable visited = new VisitedTable();
+        final DeadlockDetector deadlocks;
+        final Node[] children = new Node[Command.EVERY.length];
+        int openCount;
+
+        Worker(DeadlockDetector deadlocks) {
+            this.deadlocks = deadlocks;
+        }
+
+        @Override
+        public void run() {
+            boolean busy = true;
+            while (!done) {
+                Node received = this.inbox.poll();
+                if (received != null) {
+                    if (!busy) {
+                        activity.incrementAndGet();
+                        busy = true;
+                    }
+                    this.receive(received);
+                    activity.decrementAndGet();
+                    continue;
+                }
+                if (this.openCount > 0) {
+                    Node leaf = this.pop();
+                    if (leaf != null) {
+                        this.expand(leaf);
+                    }
+                    continue;
+                }
+                if (busy) {
+                    activity.decrementAndGet();
+                    busy = false;
+                }
+                if (activity.get() == 0) {
+                    done = true;
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        private void receive(Node n) {
+            int slot = this.visited.find(n.zobristHash());
+            if (slot >= 0 && this.visited.bestG(slot) <= n.g()) {
+                return;
+            }
+            if (heuristic.f(n) >= bound.get()) {
+                return;
+            }
+            if (slot < 0 || this.visited.isClosed(slot)) {
+                this.openCount++;
+            }
+            this.visited.putOpen(n.zobristHash(), n.g());
+            this.open.push(n, heuristic.f(n), n.g());
+        }
+
+        // Closes and returns the open node with the lowest f, or returns null once no open node
+        // is below the bound. States dropped for the bound are closed too.
+        private Node pop() {
+            while (this.openCount > 0) {
+                Node n = this.open.pop();
+                int slot = this.visited.find(n.zobristHash());
+                if (this.visited.isClosed(slot) || this.visited.bestG(slot) < n.g()) {
+                    continue;
+                }
+                this.openCount--;
+                this.visited.close(n.zobristHash(), n.g());
+                if (heuristic.f(n) < bound.get()) {
+                    return n;
+                }
+            }
+            return null;
+        }
+
+        private void expand(Node leaf) {
+            int count = leaf.expand(this.children);
+            for (int i = 0; i < count; i++) {
+                Node n = this.children[i];
+                if (n.isGoalState()) {
+                    this.improveSolution(n);
+                    continue;
+                }
+                if (this.deadlocks.isDeadlocked(n)) {
+                    continue;
+                }
+                Worker target = workers[owner(n)];
+                if (target == this) {
+                    this.receive(n);
+                } else {
+                    activity.incrementAndGet();
+                    target.inbox.offer(n);
+                }
+            }
+        }
+
+        private void improveSolution(Node goal) {
+            Node best = solution.get();
+            while (best == null || goal.g() < best.g()) {
+                if (solution.compareAndSet(best, goal)) {
+                    bound.accumulateAndGet(heuristic.f(goal.g(), 0), Math::min);
+                    return;
+                }
+                best = solution.get();
+            }
+        }
+    }
+
+    @Override
+    public int countExplored() {
+        int total = 0;
+        for (Worker w : this.workers) {
+            total += w == null ? 0 : w.visited.closedCount();
+        }
+        return total;
+    }
+
+    @Override
+    public int countFrontier() {
+        int total = 0;
+        for (Worker w : this.workers) {
+            total += w == null ? 0 : w.openCount;
+        }
+        return total;
+    }
+
+    @Override
+    protected Heuristic heuristic() {
+        return this.heuristic;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HDA* with %d threads using %s", this.workers.length, this.heuristic.toString());
+    }
+}
@@ -0,0 +1,195 @@
+package searchclient;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+// Iterative-deepening A*: repeated depth-first searches bounded by f, each bound being the
+// smallest f that exceeded the previous one. A single node is changed in place with apply and
+// undo, so apart from the transposition table memory is linear in the solution depth. Goal
+// states are accepted as soon as their g is within the bound, i.e. as if h were 0 there; with
+// an admissible heuristic the plan found is optimal.
+//
+// The transposition table has a fixed size and remembers, per state, the smallest g it was
+// searched from in the current iteration. Reaching it again at no smaller g is pruned, since
+// that subtree was or is being searched already. Entries from earlier iterations, and otherwise
+// those of deeper nodes, are the first to be replaced.
+public class StrategyIDA extends SearchEngine {
+    private static final int TABLE_BITS = 22;
+
+    private final Heuristic heuristic;
+    private final TranspositionTable table = new TranspositionTable(TABLE_BITS);
+
+    private int bound;
+    private int iteration;
+    private long explored;
+    private int depth;
+
+    public StrategyIDA(Heuristic h) {
+        super();
+        this.heuristic = h;
+    }
+
+    @Override
+    public LinkedList<Node> search(Node initialState, DeadlockDetector deadlocks) {
+        if (initialState.isGoalState()) {
+            return initialState.extractPlan();
+        }
+        Node state = initialState.detachedCopy();
+        this.bound = this.heuristic.f(state);
+        while (this.bound < Integer.MAX_VALUE) {
+            this.iteration++;
+            System.err.println(String.format("Iteration %d, f bound: %d", this.iteration, this.bound));
+            Command[] plan = this.boundedSearch(state, deadlocks);
+            if (plan != null) {
+                return replay(initialState, Arrays.asList(plan));
+            }
+        }
+        return null;
+    }
+
+    // Searches below state, which is restored before returning. Returns the plan if a goal is
+    // found within the bound, and otherwise raises the bound to the smallest f that exceeded it.
+    private Command[] boundedSearch(Node state, DeadlockDetector deadlocks) {
+        int rootG = state.g();
+        Command[] path = new Command[64];
+        int[] next = new int[64];
+        int nextBound = Integer.MAX_VALUE;
+        this.depth = 0;
+        this.table.visit(state.zobristHash(), rootG, this.iteration);
+
+        while (true) {
+            if (next[this.depth] == Command.EVERY.length) {
+                // All children done; back up to the parent.
+                if (this.depth == 0) {
+                    this.bound = nextBound;
+                    return null;
+                }
+                this.depth--;
+                state.undo(path[this.depth]);
+                state.action = this.depth > 0 ? path[this.depth - 1] : null;
+                continue;
+            }
+
+            Command c = Command.EVERY[next[this.depth]++];
+            if (!state.apply(c)) {
+                continue;
+            }
+            if (state.isGoalState() && state.g() <= this.bound) {
+                path[this.depth] = c;
+                Command[] plan = Arrays.copyOf(path, this.depth + 1);
+                this.restore(state, path);
+                return plan;
+            }
+            int f = this.heuristic.f(state);
+            boolean pruned;
+            if (f > this.bound) {
+                nextBound = Math.min(nextBound, f);
+                pruned = true;
+            } else {
+                pruned = deadlocks.isDeadlocked(state) || !this.table.visit(state.zobristHash(), state.g(), this.iteration);
+            }
+            if (pruned) {
+                state.undo(c);
+                state.action = this.depth > 0 ? path[this.depth - 1] : null;
+                continue;
+            }
+
+            this.explored++;
+            if ((this.explored & 0xFFFFF) == 0) {
+                System.err.println(this.searchStatus());
+            }
+            path[this.depth] = c;
+            this.depth++;
+            if (this.depth == path.length) {
+                path = Arrays.copyOf(path, path.length * 2);
+                next = Arrays.copyOf(next, next.length * 2);
+            }
+            next[this.depth] = 0;
+        }
+    }
+
+    // Undoes the current path, leaving state as it was when the iteration started.
+    private void restore(Node state, Command[] path) {
+        for (int d = this.depth; d >= 0; d--) {
+            state.undo(path[d]);
+        }
+    }
+
+    // Open-addressing table of two-entry buckets holding (key, g, iteration).
+    private static class TranspositionTable {
+        private final long[] keys;
+        private final int[] gs;
+        private final int[] iterations;
+        private final int mask;
+        private long stores, replacements;
+
+        TranspositionTable(int bits) {
+            this.keys = new long[1 << bits];
+            this.gs = new int[1 << bits];
+            this.iterations = new int[1 << bits];
+            this.mask = (1 << bits) - 1;
+        }
+
+        // Records that key is searched from depth g in the given iteration. Returns false if it
+        // was already searched from a depth no greater than g in that iteration.
+        boolean visit(long key, int g, int iteration) {
+            int slot = (int) (key ^ (key >>> 32)) & this.mask & ~1;
+            for (int i = slot; i < slot + 2; i++) {
+                if (this.keys[i] == key && this.iterations[i] != 0) {
+                    if (this.iterations[i] == iteration && this.gs[i] <= g) {
+                        return false;
+                    }
+                    this.gs[i] = g;
+                    this.iterations[i] = iteration;
+                    return true;
+                }
+            }
+            int victim = this.preferredVictim(slot, slot + 1);
+            if (this.iterations[victim] != 0) {
+                this.replacements++;
+            }
+            this.stores++;
+            this.keys[victim] = key;
+            this.gs[victim] = g;
+            this.iterations[victim] = iteration;
+            return true;
+        }
+
+        private int preferredVictim(int a, int b) {
+            if (this.iterations[a] != this.iterations[b]) {
+                return this.iterations[a] < this.iterations[b] ? a : b;
+            }
+            return this.gs[a] >= this.gs[b] ? a : b;
+        }
+
+        double replacementRate() {
+            return this.stores == 0 ? 0 : (double) this.replacements / this.stores;
+        }
+    }
+
+    @Override
+    public int countExplored() {
+        return (int) Math.min(Integer.MAX_VALUE, this.explored);
+    }
+
+    @Override
+    public int countFrontier() {
+        return this.depth;
+    }
+
+    @Override
+    public String searchStatus() {
+        return String.format("%s, Iteration: %d, f bound: %d, Table replacements: %.2f", super.searchStatus(), this.iteration,
+                this.bound, this.table.replacementRate());
+    }
+
+    @Override
+    protected Heuristic heuristic() {
+        return this.heuristic;
+    }
+
+    @Override
+    public String toString() {
+        return "IDA* using " + this.heuristic.toString();
+    }
+}
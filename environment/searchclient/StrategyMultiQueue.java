@@ -0,0 +1,263 @@
+package searchclient;
+
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Parallel best-first search on a MultiQueue: a relaxed concurrent priority queue made of
+// QUEUES_PER_THREAD * threads heaps ordered by the Heuristic comparator. A push goes to a
+// random heap; a pop samples two heaps and takes from the one whose minimum f is lower.
+// All threads share one lock-free visited table storing (best g << 1 | closed) per state.
+//
+// With pops only roughly in f order, the first goal generated need not be the cheapest, and a
+// state can be closed before its cheapest path is found. As in StrategyHDA, a goal is kept as
+// the incumbent and the search goes on with every node whose f is below the f a goal at the
+// incumbent's cost would have, and a state reached again more cheaply is reopened.
+//
+// Termination: 'pending' counts queued nodes plus nodes being expanded; a node is only
+// uncounted after its children have been counted, so zero means the work has run out.
+public class StrategyMultiQueue extends SearchEngine {
+    private static final int QUEUES_PER_THREAD = 2;
+    private static final int EMPTY = Integer.MAX_VALUE;
+
+    private final Heuristic heuristic;
+    private final int threads;
+    private final PriorityQueue<Node>[] queues;
+    private final ReentrantLock[] locks;
+    // Minimum f in each heap, readable without taking its lock.
+    private final AtomicIntegerArray tops;
+    private ConcurrentVisitedTable visited;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final LongAdder explored = new LongAdder();
+    private final AtomicReference<Node> solution = new AtomicReference<Node>();
+    // Nodes with at least this f cannot lead to a cheaper plan than the incumbent.
+    private final AtomicInteger bound = new AtomicInteger(Integer.MAX_VALUE);
+    private volatile boolean tableFull;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public StrategyMultiQueue(Heuristic h, int threads) {
+        super();
+        this.heuristic = h;
+        this.threads = threads;
+        int numQueues = QUEUES_PER_THREAD * threads;
+        this.queues = new PriorityQueue[numQueues];
+        this.locks = new ReentrantLock[numQueues];
+        this.tops = new AtomicIntegerArray(numQueues);
+        for (int i = 0; i < numQueues; i++) {
+            this.queues[i] = new PriorityQueue<Node>(h);
+            this.locks[i] = new ReentrantLock();
+            this.tops.set(i, EMPTY);
+        }
+    }
+
+    @Override
+    public LinkedList<Node> search(Node initialState, DeadlockDetector deadlocks) {
+        this.visited = new ConcurrentVisitedTable(ConcurrentVisitedTable.defaultCapacity());
+        this.visited.putIfAbsent(initialState.zobristHash(), (long) initialState.g() << 1);
+        this.pending.set(1);
+        this.push(initialState);
+
+        Runnable[] workers = new Runnable[this.threads];
+        for (int i = 0; i < workers.length; i++) {
+            DeadlockDetector local = new DeadlockDetector(deadlocks);
+            workers[i] = () -> this.work(local);
+        }
+        this.runWorkers(workers);
+
+        Node goal = this.solution.get();
+        if (goal == null && this.tableFull) {
+            System.err.println("Visited table is full.");
+        }
+        return goal == null ? null : goal.extractPlan();
+    }
+
+    private void work(DeadlockDetector deadlocks) {
+        Node[] children = new Node[Command.EVERY.length];
+        while (!this.done) {
+            Node leaf = this.pop();
+            if (leaf == null) {
+                if (this.pending.get() == 0) {
+                    this.done = true;
+                } else {
+                    Thread.onSpinWait();
+                }
+                continue;
+            }
+            if (this.heuristic.f(leaf) < this.bound.get() && this.claim(leaf)) {
+                this.explored.increment();
+                this.expand(leaf, deadlocks, children);
+            }
+            this.pending.decrementAndGet();
+        }
+    }
+
+    private void expand(Node leaf, DeadlockDetector deadlocks, Node[] children) {
+        int count = leaf.expand(children);
+        for (int i = 0; i < count; i++) {
+            Node n = children[i];
+            if (!this.offer(n)) {
+                continue;
+            }
+            if (n.isGoalState()) {
+                this.improveSolution(n);
+                continue;
+            }
+            if (deadlocks.isDeadlocked(n) || this.heuristic.f(n) >= this.bound.get()) {
+                continue;
+            }
+            this.pending.incrementAndGet();
+            this.push(n);
+        }
+    }
+
+    private void improveSolution(Node goal) {
+        Node best = this.solution.get();
+        while (best == null || goal.g() < best.g()) {
+            if (this.solution.compareAndSet(best, goal)) {
+                this.bound.accumulateAndGet(this.heuristic.f(goal.g(), 0), Math::min);
+                return;
+            }
+            best = this.solution.get();
+        }
+    }
+
+    // Records n in the visited table if its state is new or n reaches it more cheaply, in which
+    // case a closed state is reopened.
+    private boolean offer(Node n) {
+        long g = n.g();
+        int slot = this.visited.putIfAbsent(n.zobristHash(), g << 1);
+        if (slot == ConcurrentVisitedTable.FULL) {
+            // The table cannot grow while the other workers use it.
+            this.tableFull = true;
+            this.done = true;
+            return false;
+        }
+        if (slot >= 0) {
+            return true;
+        }
+        slot = ~slot;
+        while (true) {
+            long v = this.visited.value(slot);
+            if ((v >>> 1) <= g) {
+                return false;
+            }
+            if (this.visited.compareAndSetValue(slot, v, g << 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Closes the state of a popped node, unless it has been closed or improved on meanwhile.
+    private boolean claim(Node n) {
+        int slot = this.visited.find(n.zobristHash());
+        while (true) {
+            long v = this.visited.value(slot);
+            if ((v & 1) != 0 || (v >>> 1) < n.g()) {
+                return false;
+            }
+            if (this.visited.compareAndSetValue(slot, v, v | 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void push(Node n) {
+        this.heuristic.f(n);
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        while (true) {
+            int i = rnd.nextInt(this.queues.length);
+            if (this.locks[i].tryLock()) {
+                try {
+                    this.queues[i].offer(n);
+                    this.tops.set(i, this.heuristic.f(this.queues[i].peek()));
+                } finally {
+                    this.locks[i].unlock();
+                }
+                return;
+            }
+        }
+    }
+
+    private Node pop() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        for (int attempt = 0; attempt < this.queues.length; attempt++) {
+            int i = rnd.nextInt(this.queues.length);
+            int j = rnd.nextInt(this.queues.length);
+            if (this.tops.get(j) < this.tops.get(i)) {
+                i = j;
+            }
+            if (this.tops.get(i) == EMPTY) {
+                continue;
+            }
+            Node n = this.tryPoll(i);
+            if (n != null) {
+                return n;
+            }
+        }
+        // Sampling keeps missing; sweep all heaps before reporting that there is nothing to pop.
+        for (int i = 0; i < this.queues.length; i++) {
+            if (this.tops.get(i) != EMPTY) {
+                this.locks[i].lock();
+                try {
+                    Node n = this.pollLocked(i);
+                    if (n != null) {
+                        return n;
+                    }
+                } finally {
+                    this.locks[i].unlock();
+                }
+            }
+        }
+        return null;
+    }
+
+    private Node tryPoll(int i) {
+        if (!this.locks[i].tryLock()) {
+            return null;
+        }
+        try {
+            return this.pollLocked(i);
+        } finally {
+            this.locks[i].unlock();
+        }
+    }
+
+    private Node pollLocked(int i) {
+        Node n = this.queues[i].poll();
+        Node top = this.queues[i].peek();
+        this.tops.set(i, top == null ? EMPTY : this.heuristic.f(top));
+        return n;
+    }
+
+    @Override
+    public int countExplored() {
+        return (int) this.explored.sum();
+    }
+
+    @Override
+    public int countFrontier() {
+        return (int) this.pending.get();
+    }
+
+    @Override
+    public String searchStatus() {
+        return String.format("%s, Visited table load: %.2f", super.searchStatus(), this.visited == null ? 0 : this.visited.loadFactor());
+    }
+
+    @Override
+    protected Heuristic heuristic() {
+        return this.heuristic;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MultiQueue best-first search with %d threads using %s", this.threads, this.heuristic.toString());
+    }
+}
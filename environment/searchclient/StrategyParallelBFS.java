@@ -0,0 +1,230 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Level-synchronous breadth-first search: every depth layer is expanded in parallel with
+// fork-join before the next one is started, so the first goal found is at minimal depth, like
+// StrategyBFS. Only the current and the next layer are kept as nodes, with their parent links
+// cut. How each state was reached is recorded in a shared ConcurrentVisitedTable as
+// (parent slot << 5 | command index), and the plan is replayed from these links at the end.
+//
+// When the table fills up during a layer, the workers stop at the leaf they are on. The table
+// is then copied into one of twice the size, the links and slots are renumbered, and the
+// leaves not yet expanded are expanded again; children already inserted are skipped as usual.
+public class StrategyParallelBFS extends SearchEngine {
+    // Layers are split into tasks of at most this many nodes.
+    private static final int THRESHOLD = 256;
+    private static final long ROOT = -1;
+
+    private final int threads;
+    private ConcurrentVisitedTable visited;
+    private final AtomicInteger goalSlot = new AtomicInteger(-1);
+    private volatile boolean tableFull;
+
+    private int depth;
+    private long explored;
+    private int frontier;
+
+    public StrategyParallelBFS(int threads) {
+        super();
+        this.threads = threads;
+    }
+
+    // A layer of nodes together with their slots in the visited table.
+    private static class Layer {
+        Node[] nodes;
+        int[] slots;
+        int size;
+
+        Layer(int capacity) {
+            this.nodes = new Node[Math.max(capacity, 16)];
+            this.slots = new int[this.nodes.length];
+        }
+
+        void add(Node n, int slot) {
+            if (this.size == this.nodes.length) {
+                this.nodes = Arrays.copyOf(this.nodes, this.size * 2);
+                this.slots = Arrays.copyOf(this.slots, this.size * 2);
+            }
+            this.nodes[this.size] = n;
+            this.slots[this.size] = slot;
+            this.size++;
+        }
+
+        void addAll(Layer other) {
+            for (int i = 0; i < other.size; i++) {
+                this.add(other.nodes[i], other.slots[i]);
+            }
+        }
+
+        // The nodes that have not been expanded yet; expanded ones are nulled out.
+        Layer unexpanded() {
+            Layer rest = new Layer(this.size);
+            for (int i = 0; i < this.size; i++) {
+                if (this.nodes[i] != null) {
+                    rest.add(this.nodes[i], this.slots[i]);
+                }
+            }
+            return rest;
+        }
+    }
+
+    @Override
+    public LinkedList<Node> search(Node initialState, DeadlockDetector deadlocks) {
+        this.visited = new ConcurrentVisitedTable(ConcurrentVisitedTable.defaultCapacity());
+        Layer layer = new Layer(1);
+        layer.add(initialState, this.visited.putIfAbsent(initialState.zobristHash(), ROOT));
+        if (initialState.isGoalState()) {
+            return initialState.extractPlan();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        ThreadLocal<DeadlockDetector> detectors = ThreadLocal.withInitial(() -> new DeadlockDetector(deadlocks));
+        try {
+            while (layer.size > 0 && this.goalSlot.get() < 0) {
+                this.frontier = layer.size;
+                Layer next = pool.invoke(new ExpandTask(layer, 0, layer.size, detectors));
+                while (this.tableFull && this.goalSlot.get() < 0) {
+                    layer = layer.unexpanded();
+                    if (!this.grow(layer, next)) {
+                        System.err.println("Visited table is full.");
+                        return null;
+                    }
+                    next.addAll(pool.invoke(new ExpandTask(layer, 0, layer.size, detectors)));
+                }
+                layer = next;
+                this.explored += this.frontier;
+                this.depth++;
+                System.err.println(this.searchStatus());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        this.frontier = layer.size;
+
+        int slot = this.goalSlot.get();
+        if (slot < 0) {
+            return null;
+        }
+        LinkedList<Command> commands = new LinkedList<Command>();
+        for (long v = this.visited.value(slot); v != ROOT; v = this.visited.value((int) (v >>> 5))) {
+            commands.addFirst(Command.EVERY[(int) (v & 31)]);
+        }
+        return replayExpansions(initialState, commands);
+    }
+
+    // Moves the visited states to a table of twice the size and renumbers the parent links and
+    // the slots of the given layers to match. Returns false if the table cannot grow any more.
+    private boolean grow(Layer... layers) {
+        int capacity = this.visited.capacity();
+        if (capacity >= 1 << 30) {
+            return false;
+        }
+        ConcurrentVisitedTable bigger = new ConcurrentVisitedTable(capacity * 2);
+        int[] moved = this.visited.copyTo(bigger);
+        for (int slot = 0; slot < capacity; slot++) {
+            if (moved[slot] >= 0) {
+                long v = this.visited.value(slot);
+                if (v != ROOT) {
+                    bigger.setValue(moved[slot], (long) moved[(int) (v >>> 5)] << 5 | (v & 31));
+                }
+            }
+        }
+        for (Layer layer : layers) {
+            for (int i = 0; i < layer.size; i++) {
+                layer.slots[i] = moved[layer.slots[i]];
+            }
+        }
+        this.visited = bigger;
+        this.tableFull = false;
+        return true;
+    }
+
+    private class ExpandTask extends RecursiveTask<Layer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Layer layer;
+        private final int from, to;
+        private final ThreadLocal<DeadlockDetector> detectors;
+
+        ExpandTask(Layer layer, int from, int to, ThreadLocal<DeadlockDetector> detectors) {
+            this.layer = layer;
+            this.from = from;
+            this.to = to;
+            this.detectors = detectors;
+        }
+
+        @Override
+        protected Layer compute() {
+            if (this.to - this.from > THRESHOLD) {
+                int mid = (this.from + this.to) >>> 1;
+                ExpandTask left = new ExpandTask(this.layer, this.from, mid, this.detectors);
+                left.fork();
+                Layer right = new ExpandTask(this.layer, mid, this.to, this.detectors).compute();
+                Layer result = left.join();
+                result.addAll(right);
+                return result;
+            }
+
+            DeadlockDetector deadlocks = this.detectors.get();
+            Node[] children = new Node[Command.EVERY.length];
+            Layer next = new Layer(4 * (this.to - this.from));
+            for (int i = this.from; i < this.to && goalSlot.get() < 0 && !tableFull; i++) {
+                Node leaf = this.layer.nodes[i];
+                long link = (long) this.layer.slots[i] << 5;
+                int count = leaf.expand(children);
+                for (int j = 0; j < count; j++) {
+                    Node n = children[j];
+                    int slot = visited.putIfAbsent(n.zobristHash(), link | n.action.index);
+                    if (slot == ConcurrentVisitedTable.FULL) {
+                        // Leave the leaf in the layer to be expanded again after growing.
+                        tableFull = true;
+                        return next;
+                    }
+                    if (slot < 0) {
+                        continue;
+                    }
+                    if (n.isGoalState()) {
+                        goalSlot.compareAndSet(-1, slot);
+                        break;
+                    }
+                    if (deadlocks.isDeadlocked(n)) {
+                        continue;
+                    }
+                    // The visited table remembers how n was reached.
+                    n.parent = null;
+                    next.add(n, slot);
+                }
+                // Drop the expanded node so the layer can be collected while the next one grows.
+                this.layer.nodes[i] = null;
+            }
+            return next;
+        }
+    }
+
+    @Override
+    public int countExplored() {
+        return (int) this.explored;
+    }
+
+    @Override
+    public int countFrontier() {
+        return this.frontier;
+    }
+
+    @Override
+    public String searchStatus() {
+        return String.format("%s, Depth: %d, Visited table load: %.2f", super.searchStatus(), this.depth,
+                this.visited == null ? 0 : this.visited.loadFactor());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Level-synchronous parallel breadth-first search with %d threads", this.threads);
+    }
+}
@@ -0,0 +1,205 @@
+package searchclient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+// Best-first search over box configurations instead of single actions. The agent's position
+// only matters up to the region it can walk to, so a state is identified by its boxes plus the
+// smallest cell of that region. A successor is a walk to any reachable cell followed by a Push
+// or Pull from there; its g counts the walk too. Only box moves are stored in the search, and
+// the connecting walks are found again and expanded into Move commands when the plan is built.
+public class StrategyPushLevel extends SearchEngine {
+    private static final int[] ROW_CHANGE = new int[4];
+    private static final int[] COL_CHANGE = new int[4];
+    static {
+        for (Command.Dir d : Command.Dir.values()) {
+            ROW_CHANGE[d.ordinal()] = Command.dirToRowChange(d);
+            COL_CHANGE[d.ordinal()] = Command.dirToColChange(d);
+        }
+    }
+
+    private final Heuristic heuristic;
+    private final BucketQueue frontier = new BucketQueue(true);
+    private final VisitedTable visited = new VisitedTable();
+    private int frontierCount;
+
+    // Reachability scratch: cells reached in the current search are stamped with 'stamp'.
+    private int[] stamps;
+    private int stamp;
+    private int[] dist;
+    private int[] cameFrom;
+    private int[] queue;
+    private int reached;
+
+    public StrategyPushLevel(Heuristic h) {
+        super();
+        this.heuristic = h;
+    }
+
+    @Override
+    public LinkedList<Node> search(Node initialState, DeadlockDetector deadlocks) {
+        int cells = Node.MAX_ROW * Node.MAX_COL;
+        this.stamps = new int[cells];
+        this.dist = new int[cells];
+        this.cameFrom = new int[cells];
+        this.queue = new int[cells];
+
+        this.offer(initialState, this.key(initialState));
+        while (this.frontierCount > 0) {
+            Node leaf = this.pop();
+            if (this.countExplored() % 1000 == 0) {
+                System.err.println(this.searchStatus());
+            }
+            this.reach(leaf);
+            int region = this.reached;
+            int[] regionCells = Arrays.copyOf(this.queue, region);
+            int[] walks = new int[region];
+            for (int i = 0; i < region; i++) {
+                walks[i] = this.dist[regionCells[i]];
+            }
+            for (int i = 0; i < region; i++) {
+                int row = regionCells[i] / Node.MAX_COL;
+                int col = regionCells[i] % Node.MAX_COL;
+                for (Command c : Command.EVERY) {
+                    if (c.actionType == Command.Type.Move || !this.touchesBox(leaf, row, col, c)) {
+                        continue;
+                    }
+                    Node n = leaf.macroChild(row, col, walks[i], c);
+                    if (n == null) {
+                        continue;
+                    }
+                    if (n.isGoalState()) {
+                        return this.expandPlan(initialState, n);
+                    }
+                    if (deadlocks.isDeadlocked(n)) {
+                        continue;
+                    }
+                    this.offer(n, this.key(n));
+                }
+            }
+        }
+        return null;
+    }
+
+    // Cheap filter before building a child: the box c would move has to be there.
+    private boolean touchesBox(Node n, int row, int col, Command c) {
+        Command.Dir boxDir = c.actionType == Command.Type.Push ? c.dir1 : c.dir2;
+        return n.boxLetterAt(row + ROW_CHANGE[boxDir.ordinal()], col + COL_CHANGE[boxDir.ordinal()]) != 0;
+    }
+
+    private void offer(Node n, long key) {
+        int slot = this.visited.find(key);
+        if (slot >= 0 && (this.visited.isClosed(slot) || this.visited.bestG(slot) <= n.g())) {
+            return;
+        }
+        if (slot < 0) {
+            this.frontierCount++;
+        }
+        this.visited.putOpen(key, n.g());
+        this.frontier.push(n, this.heuristic.f(n), n.g());
+    }
+
+    private Node pop() {
+        while (true) {
+            Node n = this.frontier.pop();
+            long key = this.key(n);
+            int slot = this.visited.find(key);
+            if (!this.visited.isClosed(slot) && this.visited.bestG(slot) == n.g()) {
+                this.visited.close(key, n.g());
+                this.frontierCount--;
+                return n;
+            }
+        }
+    }
+
+    // The boxes plus the smallest cell the agent can reach.
+    private long key(Node n) {
+        this.reach(n);
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < this.reached; i++) {
+            min = Math.min(min, this.queue[i]);
+        }
+        int agent = Node.cell(n.agentRow, n.agentCol);
+        return n.zobristHash() ^ Node.agentKey(agent) ^ Node.agentKey(min);
+    }
+
+    // Breadth-first search over the cells the agent can walk to in n, filling queue[0..reached)
+    // in order of distance, with dist and the cell each was reached from.
+    private void reach(Node n) {
+        if (++this.stamp == 0) {
+            Arrays.fill(this.stamps, 0);
+            this.stamp = 1;
+        }
+        int start = Node.cell(n.agentRow, n.agentCol);
+        this.stamps[start] = this.stamp;
+        this.dist[start] = 0;
+        this.cameFrom[start] = -1;
+        this.queue[0] = start;
+        this.reached = 1;
+        for (int head = 0; head < this.reached; head++) {
+            int cell = this.queue[head];
+            int row = cell / Node.MAX_COL;
+            int col = cell % Node.MAX_COL;
+            for (int d = 0; d < 4; d++) {
+                int r = row + ROW_CHANGE[d];
+                int c = col + COL_CHANGE[d];
+                int next = Node.cell(r, c);
+                if (this.stamps[next] == this.stamp || Node.level.isWall(next) || n.boxLetterAt(r, c) != 0) {
+                    continue;
+                }
+                this.stamps[next] = this.stamp;
+                this.dist[next] = this.dist[cell] + 1;
+                this.cameFrom[next] = cell;
+                this.queue[this.reached++] = next;
+            }
+        }
+    }
+
+    // Turns the chain of box moves ending in goal into single actions, adding the walks.
+    private LinkedList<Node> expandPlan(Node initialState, Node goal) {
+        ArrayList<Command> commands = new ArrayList<Command>();
+        for (Node n : goal.extractPlan()) {
+            Node from = n.parent;
+            int target = Node.cell(n.agentRow - ROW_CHANGE[n.action.dir1.ordinal()], n.agentCol - COL_CHANGE[n.action.dir1.ordinal()]);
+            this.reach(from);
+            LinkedList<Command> walk = new LinkedList<Command>();
+            for (int cell = target; this.cameFrom[cell] >= 0; cell = this.cameFrom[cell]) {
+                walk.addFirst(moveBetween(this.cameFrom[cell], cell));
+            }
+            commands.addAll(walk);
+            commands.add(n.action);
+        }
+        return replay(initialState, commands);
+    }
+
+    private static Command moveBetween(int from, int to) {
+        for (Command c : Command.EVERY) {
+            if (c.actionType == Command.Type.Move
+                    && from + Command.dirToRowChange(c.dir1) * Node.MAX_COL + Command.dirToColChange(c.dir1) == to) {
+                return c;
+            }
+        }
+        throw new IllegalStateException("Cells " + from + " and " + to + " are not adjacent");
+    }
+
+    @Override
+    public int countExplored() {
+        return this.visited.closedCount();
+    }
+
+    @Override
+    public int countFrontier() {
+        return this.frontierCount;
+    }
+
+    @Override
+    protected Heuristic heuristic() {
+        return this.heuristic;
+    }
+
+    @Override
+    public String toString() {
+        return "Push-level best-first search using " + this.heuristic.toString();
+    }
+}
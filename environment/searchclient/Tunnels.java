@@ -0,0 +1,56 @@
+package searchclient;
+
+// Straight one-wide tunnels, found once when the level is loaded. A free cell is a horizontal
+// tunnel cell if there are walls above and below it, and a vertical one with walls left and
+// right. Inside a tunnel there is only one sensible continuation, so when macros are enabled an
+// action taking the agent, or a box pushed or pulled in a straight line, into a tunnel cell is
+// repeated until it leaves the tunnel, stops being applicable, or puts a box on a goal (see
+// Node.getExpandedNodes). Each repetition is still a node of its own in the parent chain, so
+// plans keep consisting of single actions. Stopping or turning halfway through a tunnel is no
+// longer possible, so the shortest plan may be skipped and even A* can return a longer one.
+public class Tunnels {
+    // Indexed by cell; null when macros are disabled.
+    private static boolean[] horizontal;
+    private static boolean[] vertical;
+
+    public static void init(boolean enabled) {
+        horizontal = null;
+        vertical = null;
+        if (!enabled) {
+            return;
+        }
+        horizontal = new boolean[Node.MAX_ROW * Node.MAX_COL];
+        vertical = new boolean[Node.MAX_ROW * Node.MAX_COL];
+        for (int row = 1; row < Node.MAX_ROW - 1; row++) {
+            for (int col = 1; col < Node.MAX_COL - 1; col++) {
+                if (Node.level.isWall(row, col)) {
+                    continue;
+                }
+                horizontal[Node.cell(row, col)] = Node.level.isWall(row - 1, col) && Node.level.isWall(row + 1, col);
+                vertical[Node.cell(row, col)] = Node.level.isWall(row, col - 1) && Node.level.isWall(row, col + 1);
+            }
+        }
+    }
+
+    public static boolean enabled() {
+        return horizontal != null;
+    }
+
+    // True if the action that produced n should be repeated.
+    public static boolean continues(Node n) {
+        Command c = n.action;
+        int lead;
+        if (c.actionType == Command.Type.Move) {
+            lead = Node.cell(n.agentRow, n.agentCol);
+        } else {
+            boolean straight = c.actionType == Command.Type.Push ? c.dir2 == c.dir1 : Command.isOpposite(c.dir1, c.dir2);
+            int box = n.movedBoxTo();
+            if (!straight || Node.level.isGoal(box)) {
+                return false;
+            }
+            // A pushed box leads the way, a pulled one follows the agent.
+            lead = c.actionType == Command.Type.Push ? box : Node.cell(n.agentRow, n.agentCol);
+        }
+        return c.dir1 == Command.Dir.W || c.dir1 == Command.Dir.E ? horizontal[lead] : vertical[lead];
+    }
+}
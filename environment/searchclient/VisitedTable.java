@@ -0,0 +1,217 @@
+package searchclient;
+
+import java.nio.ByteBuffer;
+
+// Open-addressing hash table from a state's 64-bit Zobrist key to its status.
+// Replaces the separate explored/frontier HashSets: one probe tells whether a state
+// was seen at all, whether it is still open and the best g it was reached with.
+// States are identified by their key alone, so no Node objects are kept alive by the table.
+//
+// The slots are kept either in heap arrays or, for large searches, off-heap in a direct
+// ByteBuffer, which the garbage collector never has to copy.
+public class VisitedTable {
+    private static final long EMPTY = 0;
+    private static final int CLOSED_BIT = 1;
+    private static final float MAX_LOAD = 0.5f;
+
+    private final boolean offHeap;
+    private Slots slots;
+    private int mask;
+    private int size;
+    private int closedCount;
+
+    public VisitedTable() {
+        this(1 << 16, false);
+    }
+
+    public VisitedTable(int initialCapacity, boolean offHeap) {
+        int capacity = Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1;
+        this.offHeap = offHeap;
+        this.slots = this.allocate(capacity);
+        this.mask = capacity - 1;
+    }
+
+    // Returns the slot of the key, or -1 if the state has not been seen.
+    public int find(long key) {
+        key = nonEmpty(key);
+        int slot = mix(key) & this.mask;
+        long k;
+        while ((k = this.slots.key(slot)) != EMPTY) {
+            if (k == key) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    // Records the state as open with cost g, whether or not it was seen before.
+    public void putOpen(long key, int g) {
+        int slot = this.findOrInsert(key);
+        if (isClosed(slot)) {
+            this.closedCount--;
+        }
+        this.slots.setValue(slot, g << 1);
+    }
+
+    // Marks the state as closed, keeping its best g.
+    public void close(long key, int g) {
+        int slot = this.findOrInsert(key);
+        if (!isClosed(slot)) {
+            this.closedCount++;
+            this.slots.setValue(slot, g << 1 | CLOSED_BIT);
+        }
+    }
+
+    public boolean isClosed(int slot) {
+        return (this.slots.value(slot) & CLOSED_BIT) != 0;
+    }
+
+    public int bestG(int slot) {
+        return this.slots.value(slot) >>> 1;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int closedCount() {
+        return this.closedCount;
+    }
+
+    public double loadFactor() {
+        return (double) this.size / (this.mask + 1);
+    }
+
+    public boolean isOffHeap() {
+        return this.offHeap;
+    }
+
+    // Memory taken by the slots, in bytes.
+    public long bytes() {
+        return (long) (this.mask + 1) * Slots.BYTES;
+    }
+
+    private int findOrInsert(long key) {
+        key = nonEmpty(key);
+        int slot = mix(key) & this.mask;
+        long k;
+        while ((k = this.slots.key(slot)) != EMPTY) {
+            if (k == key) {
+                return slot;
+            }
+            slot = (slot + 1) & this.mask;
+        }
+        if (this.size + 1 > (this.mask + 1) * MAX_LOAD) {
+            this.grow();
+            return this.findOrInsert(key);
+        }
+        this.slots.setKey(slot, key);
+        this.slots.setValue(slot, Integer.MAX_VALUE & ~CLOSED_BIT);
+        this.size++;
+        return slot;
+    }
+
+    private void grow() {
+        Slots old = this.slots;
+        int oldCapacity = this.mask + 1;
+        this.slots = this.allocate(oldCapacity * 2);
+        this.mask = oldCapacity * 2 - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            long key = old.key(i);
+            if (key != EMPTY) {
+                int slot = mix(key) & this.mask;
+                while (this.slots.key(slot) != EMPTY) {
+                    slot = (slot + 1) & this.mask;
+                }
+                this.slots.setKey(slot, key);
+                this.slots.setValue(slot, old.value(i));
+            }
+        }
+    }
+
+    private Slots allocate(int capacity) {
+        return this.offHeap ? new DirectSlots(capacity) : new HeapSlots(capacity);
+    }
+
+    // The empty marker is 0, so a key of 0 is stored as 1 instead.
+    private static long nonEmpty(long key) {
+        return key == EMPTY ? 1 : key;
+    }
+
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    // Storage for the key and value of each slot.
+    private static abstract class Slots {
+        static final int BYTES = 12;
+
+        abstract long key(int slot);
+
+        abstract void setKey(int slot, long key);
+
+        abstract int value(int slot);
+
+        abstract void setValue(int slot, int value);
+    }
+
+    private static class HeapSlots extends Slots {
+        private final long[] keys;
+        private final int[] values;
+
+        HeapSlots(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+        }
+
+        long key(int slot) {
+            return this.keys[slot];
+        }
+
+        void setKey(int slot, long key) {
+            this.keys[slot] = key;
+        }
+
+        int value(int slot) {
+            return this.values[slot];
+        }
+
+        void setValue(int slot, int value) {
+            this.values[slot] = value;
+        }
+    }
+
+    // Keys and values interleaved in one direct buffer. A buffer is limited to 2 GB, so the
+    // table can hold at most 2^27 slots; beyond that it is reported as out of memory.
+    private static class DirectSlots extends Slots {
+        private final ByteBuffer buf;
+
+        DirectSlots(int capacity) {
+            if ((long) capacity * BYTES > Integer.MAX_VALUE) {
+                throw new OutOfMemoryError("Off-heap visited table is full");
+            }
+            // allocateDirect zeroes the buffer, so every slot starts out EMPTY.
+            this.buf = ByteBuffer.allocateDirect(capacity * BYTES);
+        }
+
+        long key(int slot) {
+            return this.buf.getLong(slot * BYTES);
+        }
+
+        void setKey(int slot, long key) {
+            this.buf.putLong(slot * BYTES, key);
+        }
+
+        int value(int slot) {
+            return this.buf.getInt(slot * BYTES + 8);
+        }
+
+        void setValue(int slot, int value) {
+            this.buf.putInt(slot * BYTES + 8, value);
+        }
+    }
+}